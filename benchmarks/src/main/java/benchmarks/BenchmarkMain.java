@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Όπως το org.openjdk.jmh.Main (ίδια options, π.χ. "CatalogBenchmark -p renditions=1000"), αλλά χωρίς -rf/-rff
+// τα αποτελέσματα γράφονται σε JSON στο target/jmh/, ένα αρχείο ανά εκτέλεση, για σύγκριση στον χρόνο.
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue()) {
+            File dir = new File("target/jmh");
+            dir.mkdirs();
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            String extension = cli.getResultFormat().orElse(ResultFormatType.JSON).toString().toLowerCase();
+            options.result(new File(dir, "jmh-" + stamp + "." + extension).getPath());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package loadbalancer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// LoadBalancer.forward σε loopback: client -> proxy (δύο forward threads, όπως ο blocking load balancer) -> backend.
+// Ο backend διαβάζει ολόκληρο το μήνυμα και απαντάει με 1 byte, οπότε κάθε op είναι ένα request/response
+// μέσα από τον proxy. Throughput για τα μεγάλα μηνύματα, SampleTime για τα percentiles του latency.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench.xml")
+public class ForwardBenchmark {
+    @Param({"4096", "16384", "65536"})
+    public int bufferSize;
+
+    @Param({"64", "1048576"})
+    public int messageSize;
+
+    private ServerSocket backendListener, proxyListener;
+    private Socket client;
+    private OutputStream clientOut;
+    private InputStream clientIn;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        message = new byte[messageSize];
+        backendListener = new ServerSocket(0, 50, loopback);
+        proxyListener = new ServerSocket(0, 50, loopback);
+
+        daemon(() -> {
+            try (Socket s = backendListener.accept()) {
+                s.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+                OutputStream out = s.getOutputStream();
+                byte[] buf = new byte[messageSize];
+                while (true) {
+                    in.readFully(buf);
+                    out.write(1);
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        daemon(() -> {
+            try {
+                Socket front = proxyListener.accept();
+                Socket back = new Socket(loopback, backendListener.getLocalPort());
+                front.setTcpNoDelay(true);
+                back.setTcpNoDelay(true);
+                daemon(() -> LoadBalancer.forward(front, back, bufferSize));
+                LoadBalancer.forward(back, front, bufferSize);
+            } catch (IOException ignored) {
+            }
+        });
+
+        client = new Socket(loopback, proxyListener.getLocalPort());
+        client.setTcpNoDelay(true);
+        clientOut = client.getOutputStream();
+        clientIn = client.getInputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        proxyListener.close();
+        backendListener.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        clientOut.write(message);
+        clientOut.flush();
+        int ack = clientIn.read();
+        if (ack != 1) throw new EOFException("Proxy closed the connection");
+        return ack;
+    }
+
+    private static void daemon(Runnable task) {
+        Thread t = new Thread(task, "bench-forward");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,113 @@
+package loadbalancer;
+
+import server.CatalogIndex;
+import server.Rendition;
+import shared.Constants;
+import shared.Frame;
+import shared.Protocol;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Format -> parse ενός αιτήματος/απάντησης, text και binary: ο client γράφει, ο load balancer κάνει
+// peek για L7 routing, ο server διαβάζει. Το listing έχει N γραμμές.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench.xml")
+public class ProtocolBenchmark {
+    @Param({"100", "1000"})
+    public int entries;
+
+    private String textListing;
+    private byte[] binaryListing;
+
+    @Setup
+    public void setup() {
+        List<Rendition> catalog = new ArrayList<>();
+        for (int i = 0; catalog.size() < entries; i++) {
+            for (String res : Constants.RESOLUTIONS) {
+                if (catalog.size() < entries) catalog.add(new Rendition("movie" + i, res, "mp4"));
+            }
+        }
+        CatalogIndex index = new CatalogIndex(catalog);
+        textListing = index.listing("mp4", 100.0);
+        binaryListing = index.binaryListing("mp4", 100.0);
+    }
+
+    @Benchmark
+    public String[] textStreamRoundTrip() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream(128);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(wire, StandardCharsets.UTF_8));
+        out.println(Protocol.STREAM);
+        out.println("movie42");
+        out.println("720p");
+        out.println("mp4");
+        out.println("UDP");
+        out.println(50000);
+        out.flush();
+        byte[] bytes = wire.toByteArray();
+
+        String key = RequestPeek.routingKey(ByteBuffer.wrap(bytes), bytes.length, true);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        String command = in.readLine();
+        String movie = in.readLine();
+        String resolution = in.readLine();
+        String format = in.readLine();
+        String protocol = in.readLine();
+        int port = Integer.parseInt(in.readLine());
+        return new String[]{key, command, movie, resolution, format, protocol, String.valueOf(port)};
+    }
+
+    @Benchmark
+    public Frame binaryStreamRoundTrip() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream(128);
+        Frame.write(new DataOutputStream(wire), 7, Frame.STREAM, Frame.payload(o -> {
+            o.writeUTF("movie42");
+            o.writeUTF("720p");
+            o.writeUTF("mp4");
+            o.writeUTF("UDP");
+            o.writeInt(50000);
+        }));
+        Frame frame = Frame.read(new DataInputStream(new ByteArrayInputStream(wire.toByteArray())));
+        DataInputStream body = frame.body();
+        body.readUTF();
+        body.readUTF();
+        body.readUTF();
+        body.readUTF();
+        body.readInt();
+        return frame;
+    }
+
+    // Όπως ο client διάβαζε την απάντηση του text LIST
+    @Benchmark
+    public Map<String, List<String>> textListingParse() throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader(textListing));
+        int count = Integer.parseInt(in.readLine());
+        Map<String, List<String>> videos = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String[] parts = in.readLine().split(",");
+            videos.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(parts[1]);
+        }
+        return videos;
+    }
+
+    @Benchmark
+    public Map<String, List<String>> binaryListingParse() throws IOException {
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(binaryListing));
+        int count = body.readInt();
+        Map<String, List<String>> videos = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String movie = body.readUTF();
+            videos.computeIfAbsent(movie, k -> new ArrayList<>()).add(body.readUTF());
+        }
+        return videos;
+    }
+}
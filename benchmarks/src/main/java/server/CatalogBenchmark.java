@@ -0,0 +1,95 @@
+package server;
+
+import shared.Constants;
+import shared.Protocol;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// LIST πάνω σε κατάλογο N renditions: ολόκληρο το text αίτημα μέσα από τον ClientHandler
+// (parse, lookup στο CatalogIndex, απάντηση), το binary payload, και η ενημέρωση του index από τον watcher.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench.xml")
+public class CatalogBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int renditions;
+
+    // Ταχύτητα που επιτρέπει όλα τα resolutions, ώστε η απάντηση να έχει όλο τον κατάλογο του format
+    private static final double SPEED = 100.0;
+
+    private byte[] listRequest;
+    private Rendition extra;
+
+    @Setup
+    public void setup() {
+        // movie0 σε όλα τα resolutions και formats, μετά movie1, ...
+        int perMovie = Constants.RESOLUTIONS.length * Constants.FORMATS.length;
+        List<Rendition> catalog = new ArrayList<>(renditions);
+        for (int i = 0; i < renditions; i++) {
+            int variant = i % perMovie;
+            catalog.add(new Rendition("movie" + i / perMovie,
+                    Constants.RESOLUTIONS[variant % Constants.RESOLUTIONS.length],
+                    Constants.FORMATS[variant / Constants.RESOLUTIONS.length]));
+        }
+        Catalog.publish(new CatalogIndex(catalog));
+        extra = new Rendition("extra", "720p", "mp4");
+        listRequest = (Protocol.LIST + "\n" + SPEED + "\nmp4\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int textList() {
+        StubSocket socket = new StubSocket(listRequest);
+        new ClientHandler(socket, new BufferedInputStream(socket.getInputStream())).run();
+        return socket.output.size();
+    }
+
+    @Benchmark
+    public byte[] binaryListing() {
+        return Catalog.get().binaryListing("mp4", SPEED);
+    }
+
+    // Ένα νέο αρχείο από τον watcher: νέο index και προϋπολογισμένες απαντήσεις
+    @Benchmark
+    public CatalogIndex addRendition() {
+        return Catalog.get().withChanges(List.of(extra), List.of());
+    }
+
+    // Socket στη μνήμη: το αίτημα από byte array, η απάντηση σε buffer
+    static class StubSocket extends Socket {
+        private final InputStream input;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+
+        StubSocket(byte[] request) {
+            this.input = new ByteArrayInputStream(request);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public synchronized void close() {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package server;
+
+import shared.TlsContexts;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.openjdk.jmh.annotations.*;
+
+// Κόστος του TLS handshake στα sockets του ServerMain.createServerSocket, πλήρες και με resumption.
+// Ο client κρατάει τα sessions ανά host:port, οπότε με διαφορετικό (ψεύτικο) όνομα host κάθε φορά
+// το handshake είναι πάντα πλήρες. Τρέχει από το root του project, όπου είναι τα keystore.jks/clienttruststore.jks.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-bench.xml", "-Dserver.tls=true"})
+public class TlsHandshakeBenchmark {
+    private ServerSocket server;
+    private SSLSocketFactory clientFactory;
+    private InetAddress loopback;
+    private int port;
+    private long nextHost;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = ServerMain.createServerSocket(0);
+        port = server.getLocalPort();
+        loopback = InetAddress.getLoopbackAddress();
+        clientFactory = TlsContexts.client().getSocketFactory();
+        Thread acceptor = new Thread(this::acceptLoop, "bench-tls-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    // Handshake και ένα byte, ώστε ο client να διαβάσει και το session ticket του TLS 1.3
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try (Socket s = server.accept()) {
+                s.setTcpNoDelay(true);
+                ((SSLSocket) s).startHandshake();
+                s.getOutputStream().write(1);
+                s.getOutputStream().flush();
+                s.getInputStream().read();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Benchmark
+    public int fullHandshake() throws IOException {
+        return connect("bench-" + nextHost++);
+    }
+
+    @Benchmark
+    public int resumedHandshake() throws IOException {
+        return connect("localhost");
+    }
+
+    private int connect(String host) throws IOException {
+        Socket raw = new Socket(loopback, port);
+        raw.setTcpNoDelay(true);
+        try (SSLSocket ssl = (SSLSocket) clientFactory.createSocket(raw, host, port, true)) {
+            ssl.startHandshake();
+            return ssl.getInputStream().read();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package client;
+
+import shared.LatencyHistogram;
+import shared.Metrics;
+import shared.TlsContexts;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.HttpsURLConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// ABR πάνω στα HLS segments του server. Το ffplay διαβάζει ένα συνεχές MPEG-TS από το stdin του και
+// για κάθε segment διαλέγουμε rendition με buffer-based κανόνα (BBA): κάτω από το reservoir το χαμηλότερο,
+// πάνω από reservoir + cushion το υψηλότερο, ενδιάμεσα γραμμική αντιστοίχιση buffer -> bitrate.
+// Αλλαγή γίνεται μόνο όταν η αντιστοίχιση περάσει το επόμενο/προηγούμενο rendition, ώστε να μην ταλαντεύεται.
+// Τα renditions του ladder έχουν keyframes στα ίδια χρονικά σημεία, οπότε τα segments ευθυγραμμίζονται.
+public class AdaptivePlayer {
+    private static final Logger logger = LogManager.getLogger(AdaptivePlayer.class);
+    private static final double RESERVOIR_S = Double.parseDouble(System.getProperty("abr.reservoir", "8"));
+    private static final double CUSHION_S = Double.parseDouble(System.getProperty("abr.cushion", "16"));
+    private static final double MAX_BUFFER_S = Double.parseDouble(System.getProperty("abr.maxBuffer", "30"));
+    private static final double SAFETY = 0.8; // ανεβαίνουμε μόνο αν το rendition χωράει στο 80% του goodput
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int TIMEOUT_MS = 10000;
+    private static final LatencyHistogram FETCH = Metrics.histogram("client_abr_segment_fetch_micros");
+    private static final LongAdder UP = Metrics.counter(Metrics.name("client_abr_switches_total", "direction", "up"));
+    private static final LongAdder DOWN = Metrics.counter(Metrics.name("client_abr_switches_total", "direction", "down"));
+
+    private record Variant(long bandwidth, String name, URI playlist) {}
+    private record Segment(double start, double duration, URI uri) {}
+    private record Chunk(double duration, byte[] data) {}
+    private static final Chunk END = new Chunk(0, new byte[0]);
+
+    private final List<Variant> variants; // αύξουσα σειρά bandwidth
+    private final Map<Variant, List<Segment>> playlists = new HashMap<>();
+    // Κατεβασμένα segments που δεν έχουν δοθεί ακόμα στο ffplay: αυτό είναι το buffer μας
+    private final LinkedBlockingQueue<Chunk> buffer = new LinkedBlockingQueue<>();
+    private volatile double bufferedSeconds;
+    private volatile boolean stopped;
+    private double goodputBps; // EWMA του goodput ανά segment
+    private int current;
+    private boolean startup = true;
+    private double lastLevel;
+
+    private AdaptivePlayer(List<Variant> variants, double initialMbps) {
+        this.variants = variants;
+        this.goodputBps = initialMbps * 1_000_000;
+        this.current = byThroughput();
+    }
+
+    // Διαβάζει το master playlist του server. initialMbps: η μέτρηση της εκκίνησης, μέχρι το πρώτο segment.
+    public static AdaptivePlayer open(String masterUrl, double initialMbps) throws IOException {
+        URI master = URI.create(masterUrl);
+        List<Variant> variants = new ArrayList<>();
+        long bandwidth = -1;
+        for (String line : fetchLines(master)) {
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                bandwidth = attribute(line, "BANDWIDTH");
+            } else if (!line.isBlank() && !line.startsWith("#") && bandwidth > 0) {
+                URI playlist = master.resolve(line.trim());
+                String path = playlist.getPath();
+                String name = path.substring(0, path.lastIndexOf('/'));
+                variants.add(new Variant(bandwidth, name.substring(name.lastIndexOf('/') + 1), playlist));
+                bandwidth = -1;
+            }
+        }
+        if (variants.isEmpty()) throw new IOException("No variants in " + masterUrl);
+        variants.sort(Comparator.comparingLong(Variant::bandwidth));
+        return new AdaptivePlayer(variants, initialMbps);
+    }
+
+    // Κατεβάζει και γράφει στο sink μέχρι το τέλος της ταινίας ή το stop(). Κλείνει το sink στο τέλος.
+    public void play(OutputStream sink) throws IOException, InterruptedException {
+        Thread writer = new Thread(() -> feed(sink), "abr-writer");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            double position = 0;
+            while (!stopped) {
+                // Γεμάτο buffer: περιμένουμε να παίξει το ffplay πριν ζητήσουμε κι άλλο
+                while (!stopped && bufferedSeconds >= MAX_BUFFER_S) Thread.sleep(200);
+                if (stopped) break;
+                Variant variant = variants.get(current);
+                Segment segment = segmentAt(variant, position);
+                if (segment == null) break; // τέλος της ταινίας
+
+                long start = System.nanoTime();
+                byte[] data = fetch(segment.uri());
+                FETCH.record((System.nanoTime() - start) / 1000);
+                double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-3);
+                double sample = data.length * 8 / seconds;
+                goodputBps = EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * goodputBps;
+
+                synchronized (this) {
+                    bufferedSeconds += segment.duration();
+                }
+                buffer.put(new Chunk(segment.duration(), data));
+                position = segment.start() + segment.duration();
+                choose();
+            }
+        } finally {
+            buffer.put(END);
+            writer.join();
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        buffer.offer(END);
+    }
+
+    // Ο writer μπλοκάρει στο pipe όσο το ffplay δεν διαβάζει, άρα το buffer αδειάζει με τον ρυθμό της αναπαραγωγής
+    private void feed(OutputStream sink) {
+        try (OutputStream out = sink) {
+            while (true) {
+                Chunk chunk = buffer.take();
+                if (chunk == END) break;
+                synchronized (this) {
+                    bufferedSeconds -= chunk.duration();
+                }
+                out.write(chunk.data());
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Το ffplay έκλεισε (Stop ή τέλος παραθύρου)
+            stopped = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // BBA με throughput στην εκκίνηση: μέχρι να γεμίσει το buffer ακολουθούμε το goodput,
+    // μετά το buffer. Ανεβαίνουμε μόνο αν το επιτρέπει και το goodput.
+    private void choose() {
+        double level = bufferedSeconds;
+        int next = byBuffer(level);
+        int throughput = byThroughput();
+        if (startup) {
+            // Τέλος της εκκίνησης όταν το buffer φτάσει το goodput ή αρχίσει να αδειάζει
+            if (next >= throughput || level < lastLevel) startup = false;
+            else next = Math.max(next, throughput);
+        }
+        lastLevel = level;
+        if (next > current) next = Math.max(current, Math.min(next, throughput));
+        if (next != current) {
+            logger.info(String.format("ABR: %s -> %s (buffer %.1f s, goodput %.2f Mbps)",
+                    variants.get(current).name(), variants.get(next).name(), level, goodputBps / 1_000_000));
+            (next > current ? UP : DOWN).increment();
+            current = next;
+        }
+    }
+
+    private int byBuffer(double level) {
+        int last = variants.size() - 1;
+        if (level <= RESERVOIR_S) return 0;
+        if (level >= RESERVOIR_S + CUSHION_S) return last;
+        long min = variants.get(0).bandwidth(), max = variants.get(last).bandwidth();
+        double rate = min + (level - RESERVOIR_S) / CUSHION_S * (max - min);
+        int up = Math.min(current + 1, last), down = Math.max(current - 1, 0);
+        if (rate >= variants.get(up).bandwidth()) {
+            int next = current;
+            while (next < last && variants.get(next + 1).bandwidth() < rate) next++;
+            return next;
+        }
+        if (rate <= variants.get(down).bandwidth()) {
+            int next = current;
+            while (next > 0 && variants.get(next - 1).bandwidth() > rate) next--;
+            return next;
+        }
+        return current;
+    }
+
+    private int byThroughput() {
+        int next = 0;
+        while (next + 1 < variants.size() && variants.get(next + 1).bandwidth() <= SAFETY * goodputBps) next++;
+        return next;
+    }
+
+    // Το segment που ξεκινάει στο position (ή αμέσως μετά), ώστε μια αλλαγή rendition να μη χάνει/επαναλαμβάνει
+    private Segment segmentAt(Variant variant, double position) throws IOException {
+        List<Segment> segments = playlists.get(variant);
+        if (segments == null) {
+            segments = mediaPlaylist(variant.playlist());
+            playlists.put(variant, segments);
+        }
+        for (Segment s : segments) {
+            if (s.start() + s.duration() / 2 >= position) return s;
+        }
+        return null;
+    }
+
+    private static List<Segment> mediaPlaylist(URI playlist) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        double start = 0, duration = -1;
+        for (String line : fetchLines(playlist)) {
+            if (line.startsWith("#EXTINF:")) {
+                String value = line.substring(8);
+                int comma = value.indexOf(',');
+                duration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (!line.isBlank() && !line.startsWith("#") && duration >= 0) {
+                segments.add(new Segment(start, duration, playlist.resolve(line.trim())));
+                start += duration;
+                duration = -1;
+            }
+        }
+        return segments;
+    }
+
+    private static long attribute(String line, String name) {
+        for (String attr : line.substring(line.indexOf(':') + 1).split(",")) {
+            if (attr.startsWith(name + "=")) return Long.parseLong(attr.substring(name.length() + 1));
+        }
+        return -1;
+    }
+
+    private static List<String> fetchLines(URI uri) throws IOException {
+        return new String(fetch(uri), StandardCharsets.UTF_8).lines().toList();
+    }
+
+    // Keep-alive του HttpURLConnection: τα segments περνάνε από την ίδια σύνδεση χωρίς νέο handshake
+    private static byte[] fetch(URI uri) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
+        if (conn instanceof HttpsURLConnection https) {
+            // Εμπιστευόμαστε μόνο το truststore του client, όπως και στη σύνδεση ελέγχου. Το URL έχει την IP
+            // του server, οπότε το certificate του πρέπει να την έχει στα SAN (το keystore.jks: localhost,
+            // 127.0.0.1, ::1) και ο default hostname verifier μένει.
+            https.setSSLSocketFactory(TlsContexts.client().getSocketFactory());
+        }
+        conn.setConnectTimeout(TIMEOUT_MS);
+        conn.setReadTimeout(TIMEOUT_MS);
+        int status = conn.getResponseCode();
+        if (status != 200) {
+            conn.disconnect();
+            throw new IOException("HTTP " + status + " for " + uri);
+        }
+        try (InputStream in = conn.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
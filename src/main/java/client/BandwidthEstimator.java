@@ -0,0 +1,66 @@
+package client;
+
+import shared.Metrics;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Εκτίμηση bandwidth και RTT με PROBE προς τον server, στη διαδρομή client -> load balancer -> server
+// που παίρνει και το βίντεο. Η πρώτη μέτρηση γίνεται στην εκκίνηση και κρατάει κλάσματα του δευτερολέπτου,
+// μετά η τιμή ανανεώνεται στο background και όλοι διαβάζουν την cached.
+public class BandwidthEstimator {
+    private static final Logger logger = LogManager.getLogger(BandwidthEstimator.class);
+    private static final double DEFAULT_MBPS = 3.0; // μέχρι την πρώτη επιτυχημένη μέτρηση
+    private static final int MIN_BYTES = 256 * 1024;
+    private static final int MAX_BYTES = 8 << 20;
+    private static final double TARGET_SECONDS = 0.25; // διάρκεια του burst με βάση την προηγούμενη εκτίμηση
+    private static final long REFRESH_MS = Long.getLong("probe.refreshMs", 30000);
+
+    private static volatile double mbps = -1;
+    private static volatile double rttMs = -1;
+    private static int burstBytes = Integer.getInteger("probe.bytes", 1 << 20);
+    private static ScheduledExecutorService refresher;
+
+    static {
+        Metrics.gauge("client_bandwidth_kbps", () -> (long) (mbps() * 1000));
+        Metrics.gauge("client_rtt_micros", () -> (long) (rttMs * 1000));
+    }
+
+    public static double mbps() {
+        double value = mbps;
+        return value > 0 ? value : DEFAULT_MBPS;
+    }
+
+    public static double rttMs() {
+        return rttMs;
+    }
+
+    // Νέα μέτρηση. Σε αποτυχία μένει η προηγούμενη τιμή.
+    public static synchronized double measure() {
+        try {
+            ControlConnection.Probe probe = ControlConnection.get().probe(burstBytes);
+            // Στρογγυλοποίηση όπως στο UI, σε Mbps με δύο δεκαδικά
+            mbps = Math.round(probe.mbps() * 100.0) / 100.0;
+            rttMs = probe.rttMs();
+            logger.info(String.format("Probe: %.2f Mbps, RTT %.1f ms (%d bytes)", probe.mbps(), probe.rttMs(), burstBytes));
+            // Το επόμενο burst όσο χρειάζεται για ~TARGET_SECONDS με την τωρινή ταχύτητα
+            burstBytes = (int) Math.max(MIN_BYTES, Math.min(MAX_BYTES, probe.mbps() * 1_000_000 / 8 * TARGET_SECONDS));
+        } catch (IOException e) {
+            logger.warn("Speed probe failed: " + e.getMessage() + ", using " + mbps() + " Mbps");
+        }
+        return mbps();
+    }
+
+    public static synchronized void startRefresh() {
+        if (refresher != null) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "speed-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(BandwidthEstimator::measure, REFRESH_MS, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+}
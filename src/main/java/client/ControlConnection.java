@@ -0,0 +1,249 @@
+package client;
+
+import shared.BusyException;
+import shared.Constants;
+import shared.Frame;
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Μία persistent σύνδεση με τον server για LIST, STATS και PROBE, με binary frames.
+// Το TCP/TLS handshake γίνεται μία φορά. Κάθε αίτημα έχει δικό του requestId και ένα
+// reader thread μοιράζει τις απαντήσεις στα αιτήματα που περιμένουν. Ένα KEEPALIVE ανά KEEPALIVE_MS
+// δείχνει στον server ότι ο client είναι ακόμα εκεί, ώστε να σταματήσει τα streams μας αν χαθεί η σύνδεση.
+// Κάθε STREAM ανοίγει δική του σύνδεση με το STREAM για πρώτο frame: ο LB (lb.l7) διαβάζει από αυτό το
+// rendition και τη στέλνει στον backend που το έχει, όπως και τα text αιτήματα.
+public class ControlConnection implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ControlConnection.class);
+    private static final long KEEPALIVE_MS = Long.getLong("control.keepaliveMs", 5000);
+    private static ControlConnection shared;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<Integer, Call> calls = new ConcurrentHashMap<>();
+    private final boolean dedicated; // σύνδεση ενός STREAM, κλείνει μαζί με το Call του
+    private final Thread keepalive;
+    private volatile boolean closed;
+
+    // Η κοινή σύνδεση του client, ανοίγει ξανά αν έκλεισε
+    public static synchronized ControlConnection get() throws IOException {
+        if (shared == null || shared.closed) {
+            shared = new ControlConnection(StreamingClient.createSocket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT), false);
+        }
+        return shared;
+    }
+
+    private ControlConnection(Socket socket, boolean dedicated) throws IOException {
+        this.socket = socket;
+        this.dedicated = dedicated;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        // Φεύγει μαζί με το πρώτο frame, ώστε ο LB να βρει το αίτημα στο ίδιο segment
+        out.write(Frame.MAGIC);
+        keepalive = new Thread(this::keepaliveLoop, "control-keepalive");
+        keepalive.setDaemon(true);
+        Thread reader = new Thread(this::readLoop, "control-reader");
+        reader.setDaemon(true);
+        reader.start();
+        keepalive.start();
+    }
+
+    private void keepaliveLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(KEEPALIVE_MS);
+                Frame.write(out, 0, Frame.KEEPALIVE, Frame.EMPTY);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) logger.warn("Control connection keepalive failed: " + e.getMessage());
+                close();
+            }
+        }
+    }
+
+    private void readLoop() {
+        try {
+            Frame frame;
+            while ((frame = Frame.read(in)) != null) {
+                Call call = calls.get(frame.requestId());
+                if (call != null) call.deliver(frame);
+            }
+        } catch (IOException e) {
+            if (!closed) logger.warn("Control connection failed: " + e.getMessage());
+        }
+        close();
+    }
+
+    // Διαθέσιμα βίντεο: movie -> resolution -> μετρημένο bitrate σε Mbps, τα resolutions σε αύξουσα σειρά
+    public Map<String, Map<String, Double>> list(double speed, String format) throws IOException {
+        Frame reply = request(Frame.LIST, Frame.payload(o -> {
+            o.writeDouble(speed);
+            o.writeUTF(format);
+        }));
+        DataInputStream body = expect(reply, Frame.LISTING);
+        int count = body.readInt();
+        Map<String, Map<String, Double>> availableVideos = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String movie = body.readUTF();
+            String resolution = body.readUTF();
+            availableVideos.computeIfAbsent(movie, k -> new LinkedHashMap<>()).put(resolution, body.readInt() / 1000.0);
+        }
+        return availableVideos;
+    }
+
+    public Map<String, String> stats() throws IOException {
+        DataInputStream body = expect(request(Frame.STATS, Frame.EMPTY), Frame.STATS_RESULT);
+        int count = body.readInt();
+        Map<String, String> stats = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) stats.put(body.readUTF(), body.readUTF());
+        return stats;
+    }
+
+    // Ξεκινάει ένα STREAM σε νέα σύνδεση. Οι απαντήσεις (STREAMING, SDP, READY, FIRST_PACKET, END) έρχονται
+    // από το Call. Το stream παίζει όσο είναι ανοιχτό το Call: το close() πριν το END το σταματάει στον server
+    // και κλείνει τη σύνδεση.
+    public static Call stream(String movie, String resolution, String format, String protocol, int port) throws IOException {
+        byte[] payload = Frame.payload(o -> {
+            o.writeUTF(movie);
+            o.writeUTF(resolution);
+            o.writeUTF(format);
+            o.writeUTF(protocol);
+            o.writeInt(port);
+        });
+        ControlConnection connection = new ControlConnection(
+                StreamingClient.createSocket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT), true);
+        try {
+            Call call = connection.open();
+            call.streaming = true;
+            call.send(Frame.STREAM, payload);
+            return call;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public record Probe(double rttMs, double mbps) {}
+
+    // Burst από τον server στην ίδια διαδρομή με το βίντεο: RTT ως το πρώτο (κενό) PROBE_DATA,
+    // bandwidth από τα bytes του burst και τον χρόνο από εκείνο ως το τελευταίο
+    public Probe probe(int bytes) throws IOException {
+        try (Call call = open()) {
+            long start = System.nanoTime();
+            call.send(Frame.PROBE, Frame.payload(o -> o.writeInt(bytes)));
+            expect(call.next(), Frame.PROBE_DATA);
+            long first = System.nanoTime();
+            long received = 0;
+            long last = first;
+            Frame frame;
+            while ((frame = call.next()).type() == Frame.PROBE_DATA) {
+                received += frame.payload().length;
+                last = System.nanoTime();
+            }
+            expect(frame, Frame.END);
+            double seconds = Math.max((last - first) / 1e9, 1e-4);
+            return new Probe((first - start) / 1e6, received * 8 / seconds / 1_000_000);
+        }
+    }
+
+    private Frame request(byte type, byte[] payload) throws IOException {
+        try (Call call = open()) {
+            call.send(type, payload);
+            return call.next();
+        }
+    }
+
+    private static DataInputStream expect(Frame reply, byte type) throws IOException {
+        if (reply.type() == Frame.ERROR) throw new IOException("Server error: " + reply.body().readUTF());
+        if (reply.type() == Frame.BUSY) throw new BusyException(reply.body().readInt());
+        if (reply.type() != type) throw new IOException("Unexpected reply type " + reply.type());
+        return reply.body();
+    }
+
+    private Call open() throws IOException {
+        if (closed) throw new IOException("Control connection closed");
+        Call call = new Call(nextId.getAndIncrement());
+        calls.put(call.id, call);
+        if (closed) {
+            call.close();
+            throw new IOException("Control connection closed");
+        }
+        return call;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        keepalive.interrupt();
+        try { socket.close(); } catch (IOException ignored) {}
+        // Ξυπνάμε όσους περιμένουν απάντηση
+        byte[] message;
+        try {
+            message = Frame.payload(o -> o.writeUTF("connection closed"));
+        } catch (IOException e) {
+            message = Frame.EMPTY;
+        }
+        for (Map.Entry<Integer, Call> e : calls.entrySet()) {
+            e.getValue().deliver(new Frame(e.getKey(), Frame.ERROR, message));
+        }
+    }
+
+    public class Call implements Closeable {
+        private final int id;
+        private final BlockingQueue<Frame> replies = new LinkedBlockingQueue<>();
+        private volatile boolean streaming, finished;
+
+        private Call(int id) {
+            this.id = id;
+        }
+
+        private void deliver(Frame frame) {
+            byte type = frame.type();
+            if (type == Frame.END || type == Frame.ERROR || type == Frame.NOT_FOUND || type == Frame.BUSY) {
+                finished = true;
+            }
+            replies.add(frame);
+        }
+
+        public void send(byte type, byte[] payload) throws IOException {
+            Frame.write(out, id, type, payload);
+        }
+
+        // Η επόμενη απάντηση για αυτό το αίτημα
+        public Frame next() throws IOException {
+            try {
+                return replies.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        // Σταματάει το stream στον server (Stop του χρήστη, έκλεισε το ffplay). Τίποτα αν έχει ήδη τελειώσει.
+        public void cancel() {
+            if (!streaming || finished || closed) return;
+            finished = true;
+            try {
+                send(Frame.CANCEL, Frame.EMPTY);
+            } catch (IOException e) {
+                logger.debug("Could not cancel stream " + id + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            cancel();
+            calls.remove(id);
+            if (dedicated) ControlConnection.this.close();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.formdev.flatlaf.FlatDarkLaf;
 
 public class StreamingClient {
     private static final Logger logger = LogManager.getLogger(StreamingClient.class);
+    private static final int BUSY_RETRIES = 3;
 
     public static void main(String[] args) {
         // Set UI theme
@@ -23,15 +24,13 @@ public class StreamingClient {
             logger.warn("Failed to initialize FlatLaf: " + ex.getMessage());
         }
 
-        // Set SSL truststore before any connection if using SSL
-        if (Constants.USE_SSL) {
-            System.setProperty("javax.net.ssl.trustStore", Constants.TRUSTSTORE_PATH);
-            System.setProperty("javax.net.ssl.trustStorePassword", Constants.TRUSTSTORE_PASSWORD);
-        }
-
         logger.info("Starting Video Streaming Client...");
+        // Μόνο JMX, εκτός αν δοθεί -Dmetrics.port
+        Metrics.start("client", 0);
         try {
-            double connectionSpeed = NetworkSpeedTest.measureDownloadSpeed();
+            // PROBE στην ίδια διαδρομή με το βίντεο, μετά ανανέωση στο background
+            double connectionSpeed = BandwidthEstimator.measure();
+            BandwidthEstimator.startRefresh();
             logger.info("Connection speed: " + connectionSpeed + " Mbps");
 
             String[] formats = Constants.FORMATS;
@@ -40,7 +39,7 @@ public class StreamingClient {
                     JOptionPane.QUESTION_MESSAGE, null, formats, formats[0]);
             if (selectedFormat == null) System.exit(0);
 
-            Map<String, List<String>> availableVideos = getAvailableVideos(connectionSpeed, selectedFormat);
+            Map<String, Map<String, Double>> availableVideos = getAvailableVideos(connectionSpeed, selectedFormat);
 
             if (!availableVideos.isEmpty()) {
                 SwingUtilities.invokeLater(() ->
@@ -56,38 +55,47 @@ public class StreamingClient {
         }
     }
 
-    // Διαθέσιμα βίντεο με βάση speed and format
-    private static Map<String, List<String>> getAvailableVideos(double speed, String format) throws IOException {
-        try (Socket socket = createSocket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-
-            out.println(Protocol.LIST);
-            out.println(speed);
-            out.println(format);
-            out.flush();
-
-            int videoCount = Integer.parseInt(in.readLine());
-            Map<String, List<String>> availableVideos = new HashMap<>();
-            for (int i = 0; i < videoCount; i++) {
-                String[] parts = in.readLine().split(",");
-                if (parts.length == 2) {
-                    availableVideos.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(parts[1]);
+    // Διαθέσιμα βίντεο με βάση speed and format, μέσω της persistent σύνδεσης. Σε BUSY ο server κλείνει
+    // τη σύνδεση, οπότε η επόμενη προσπάθεια ανοίγει καινούργια και ο load balancer διαλέγει ξανά backend.
+    private static Map<String, Map<String, Double>> getAvailableVideos(double speed, String format) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return ControlConnection.get().list(speed, format);
+            } catch (BusyException e) {
+                if (attempt >= BUSY_RETRIES) throw e;
+                logger.info(e.getMessage() + ", retrying");
+                try {
+                    Thread.sleep(e.retryAfterMs());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
             }
-            return availableVideos;
         }
     }
 
+    private static final HandshakeStats TLS_HANDSHAKES = new HandshakeStats();
+
+    // Το κοινό client SSLContext κρατάει τα sessions, οπότε οι επόμενες συνδέσεις κάνουν resumption
     public static Socket createSocket(String host, int port) throws IOException {
 
         if (!Constants.USE_SSL) return new Socket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT);
+        SSLSocket socket = (SSLSocket) TlsContexts.client().getSocketFactory()
+                .createSocket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT);
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
         try {
-            SSLSocketFactory sf = (SSLSocketFactory) SSLSocketFactory.getDefault();
-            return sf.createSocket(Constants.LOAD_BALANCER_IP, Constants.LOAD_BALANCER_PORT);
-        } catch (Exception e) {
-            throw new IOException("Could not create SSL socket", e);
+            socket.startHandshake();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
         }
+        long nanos = System.nanoTime() - start;
+        boolean resumed = HandshakeStats.isResumed(socket.getSession(), startMillis);
+        TLS_HANDSHAKES.record(nanos, resumed);
+        logger.info("TLS handshake in " + nanos / 1_000_000 + " ms" + (resumed ? " (resumed)" : "")
+                + ". " + TLS_HANDSHAKES.summary());
+        return socket;
     }
 
 }
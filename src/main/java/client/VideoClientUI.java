@@ -1,26 +1,45 @@
 package client;
 
 import shared.*;
+import shared.Frame;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 public class VideoClientUI {
+    private static final Logger logger = LogManager.getLogger(VideoClientUI.class);
+    private static final String[] PROTOCOLS = {"TCP", "UDP", "RTP", "HLS", "ABR", "INBAND"};
+    // Ως την απάντηση STREAMING και ως το πρώτο πακέτο, όπως τα βλέπει ο client
+    private static final Metrics.Family<LatencyHistogram> SETUP =
+            Metrics.family("client_stream_setup_micros", "protocol", PROTOCOLS, Metrics::histogram);
+    private static final Metrics.Family<LatencyHistogram> FIRST_PACKET =
+            Metrics.family("client_first_packet_micros", "protocol", PROTOCOLS, Metrics::histogram);
     private JFrame frame;
     private JComboBox<String> resolutionCombo;
     private JComboBox<String> protocolCombo;
     private JList<String> movieList;
     private JButton playButton, stopButton, saveButton;
-    private final Map<String, List<String>> availableVideos;
+    private JLabel serverLabel, speedLabel;
+    private final Map<String, Map<String, Double>> availableVideos; // movie -> resolution -> Mbps
     private Process ffplayProcess;
-    private double connectionSpeed;
+    private volatile AdaptivePlayer adaptivePlayer;
+    private volatile ControlConnection.Call currentStream; // για το Stop: το stream σταματάει και στον server
+    private volatile double connectionSpeed; // ανανεώνεται από το BandwidthEstimator
     private String selectedFormat;
     private volatile boolean isPlaying = false;
 
-    public VideoClientUI(Map<String, List<String>> availableVideos, double connectionSpeed, String selectedFormat) {
+    public VideoClientUI(Map<String, Map<String, Double>> availableVideos, double connectionSpeed, String selectedFormat) {
         this.availableVideos = availableVideos;
         this.connectionSpeed = connectionSpeed;
         this.selectedFormat = selectedFormat;
@@ -46,7 +65,7 @@ public class VideoClientUI {
         JScrollPane scrollPane = new JScrollPane(movieList);
 
         resolutionCombo = new JComboBox<>();
-        protocolCombo = new JComboBox<>(new String[]{"Auto", "TCP", "UDP", "RTP"});
+        protocolCombo = new JComboBox<>(new String[]{"Auto", "INBAND", "TCP", "UDP", "RTP", "HLS", "ABR"});
 
         JPanel topSelectionPanel = new JPanel(new BorderLayout(5,5));
         topSelectionPanel.add(new JLabel(" Select a movie:"), BorderLayout.NORTH);
@@ -59,8 +78,11 @@ public class VideoClientUI {
         settingsPanel.add(new JLabel("Protocol:"));
         settingsPanel.add(protocolCombo);
         settingsPanel.add(new JLabel("Connection Speed:"));
-        JLabel speedLabel = new JLabel(String.format("%.2f Mbps", connectionSpeed));
+        speedLabel = new JLabel(String.format("%.2f Mbps", connectionSpeed));
         settingsPanel.add(speedLabel);
+        settingsPanel.add(new JLabel("Server:"));
+        serverLabel = new JLabel("-");
+        settingsPanel.add(serverLabel);
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         playButton = new JButton("▶ Play");
@@ -91,11 +113,10 @@ public class VideoClientUI {
                 String selectedMovie = movieList.getSelectedValue();
                 resolutionCombo.removeAllItems();
                 if (selectedMovie != null && availableVideos.containsKey(selectedMovie)) {
-                    // Only show allowed resolutions for the user's current speed
-                    availableVideos.get(selectedMovie).stream()
-                            .sorted()
-                            .filter(res -> allowed(res, connectionSpeed))
-                            .forEach(resolutionCombo::addItem);
+                    // Μόνο όσα resolutions αντέχει η τρέχουσα ταχύτητα, με το μετρημένο bitrate του αρχείου
+                    availableVideos.get(selectedMovie).forEach((res, mbps) -> {
+                        if (mbps <= connectionSpeed) resolutionCombo.addItem(res);
+                    });
                     if (resolutionCombo.getItemCount() > 0) resolutionCombo.setSelectedIndex(0);
                 }
             }
@@ -114,10 +135,86 @@ public class VideoClientUI {
         });
 
         if (!listModel.isEmpty()) movieList.setSelectedIndex(0);
+        // STATS από την ίδια persistent σύνδεση, χωρίς νέο handshake. Η ταχύτητα είναι η cached εκτίμηση.
+        new Timer(5000, e -> {
+            connectionSpeed = BandwidthEstimator.mbps();
+            speedLabel.setText(String.format("%.2f Mbps", connectionSpeed));
+            refreshServerStats();
+        }).start();
+        refreshServerStats();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
 
+    private void refreshServerStats() {
+        Thread t = new Thread(() -> {
+            try {
+                Map<String, String> stats = ControlConnection.get().stats();
+                String text = stats.get("liveStreams") + " live, " + stats.get("viewers") + " viewers, "
+                        + stats.get("transcodesRunning") + " transcoding";
+                SwingUtilities.invokeLater(() -> serverLabel.setText(text));
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> serverLabel.setText("unavailable"));
+            }
+        }, "server-stats");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Datagrams του server -> stdin του ffplay, μέχρι να κλείσει το socket ή το ffplay
+    private static void relayDatagrams(DatagramSocket socket, OutputStream ffplayIn) {
+        byte[] buffer = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try (OutputStream target = ffplayIn) {
+            while (true) {
+                socket.receive(packet);
+                target.write(buffer, 0, packet.getLength());
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // MEDIA frames -> stdin του ffplay, μέχρι το END του server ή να κλείσει το ffplay
+    private static void relayMedia(ControlConnection.Call call, OutputStream ffplayIn, long requestStart) {
+        try (OutputStream target = ffplayIn) {
+            boolean first = true;
+            Frame frame;
+            while ((frame = call.next()).type() == Frame.MEDIA) {
+                if (first) {
+                    first = false;
+                    long micros = (System.nanoTime() - requestStart) / 1000;
+                    FIRST_PACKET.get("INBAND").record(micros);
+                    logger.info("Time to first packet (INBAND): " + micros / 1000 + " ms");
+                }
+                target.write(frame.payload());
+            }
+        } catch (IOException e) {
+            logger.info("In-band stream stopped: " + e.getMessage());
+        }
+    }
+
+    // Το ffplay ανοίγει μόνο του τα RTP/RTCP ports του SDP. Ένα κενό datagram στο RTCP port γυρίζει
+    // ICMP port unreachable όσο δεν είναι bound, οπότε ξέρουμε πότε μπορεί να ξεκινήσει ο server.
+    private static boolean awaitReceiver(String ip, int port, Process receiver) throws IOException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.connect(new InetSocketAddress(ip, port));
+            probe.setSoTimeout(20);
+            byte[] empty = new byte[0];
+            while (receiver.isAlive() && System.nanoTime() < deadline) {
+                try {
+                    probe.send(new DatagramPacket(empty, 0));
+                    probe.receive(new DatagramPacket(new byte[1], 1));
+                } catch (PortUnreachableException e) {
+                    LockSupport.parkNanos(5_000_000);
+                } catch (SocketTimeoutException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public static int findFreeUDPPort() throws IOException {
         try (DatagramSocket socket = new DatagramSocket(0)) {
             return socket.getLocalPort();
@@ -135,7 +232,7 @@ public class VideoClientUI {
         }
 
         String actualProtocol = selectedProtocolChoice.equals("Auto")
-                ? getAutoProtocol(selectedResolution) : selectedProtocolChoice;
+                ? getAutoProtocol(availableVideos.get(selectedMovie).get(selectedResolution)) : selectedProtocolChoice;
 
         playButton.setEnabled(false);
         playButton.setText("Loading...");
@@ -145,17 +242,6 @@ public class VideoClientUI {
         new Thread(() -> requestAndPlay(selectedMovie, selectedResolution, selectedFormat, actualProtocol)).start();
     }
 
-    private boolean allowed(String res, double speed) {
-        return switch (res) {
-            case "240p" -> speed >= Constants.BITRATE_240P;
-            case "360p" -> speed >= Constants.BITRATE_360P;
-            case "480p" -> speed >= Constants.BITRATE_480P;
-            case "720p" -> speed >= Constants.BITRATE_720P;
-            case "1080p" -> speed >= Constants.BITRATE_1080P;
-            default -> false;
-        };
-    }
-
     private void saveVideo() {
         String selectedMovie = movieList.getSelectedValue();
         String selectedResolution = (String) resolutionCombo.getSelectedItem();
@@ -170,21 +256,8 @@ public class VideoClientUI {
         playButton.setEnabled(false);
         saveButton.setEnabled(false);
         new Thread(() -> {
-            try (Socket socket = StreamingClient.createSocket(Constants.SERVER_IP, Constants.PORT);
-                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                 InputStream in = socket.getInputStream();
-                 FileOutputStream fos = new FileOutputStream(outFile)) {
-
-                out.println(Protocol.SAVE);
-                out.println(selectedMovie);
-                out.println(selectedResolution);
-                out.println(selectedFormat);
-                out.flush();
-                byte[] buffer = new byte[65536];
-                int read;
-                while ((read = in.read(buffer)) > 0) {
-                    fos.write(buffer, 0, read);
-                }
+            try {
+                downloadVideo(selectedMovie, selectedResolution, outFile);
                 SwingUtilities.invokeLater(() -> {
                     JOptionPane.showMessageDialog(frame, "Saved video to: " + outFile.getAbsolutePath());
                     playButton.setEnabled(true);
@@ -200,69 +273,191 @@ public class VideoClientUI {
         }).start();
     }
 
-    private void requestAndPlay(String movie, String resolution, String format, String protocol) {
-        ffplayProcess = null;
+    // Κατεβάζει σε <file>.part και συνεχίζει από εκεί αν ένα προηγούμενο download κόπηκε.
+    // Στο τέλος ελέγχεται το SHA-256 του server πριν γίνει rename στο τελικό όνομα.
+    private void downloadVideo(String movie, String resolution, File outFile) throws IOException {
+        File partFile = new File(outFile.getPath() + ".part");
+        long offset = partFile.exists() ? partFile.length() : 0;
         try (Socket socket = StreamingClient.createSocket(Constants.SERVER_IP, Constants.PORT);
              PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-
-            int chosenPort = findFreeUDPPort();
-            String ip = "127.0.0.1";
-
-            // If UDP, open ffplay first
-            if (protocol.equalsIgnoreCase("UDP")) {
-                ffplayProcess = new ProcessBuilder(
-                        "ffplay", "-autoexit", "-fflags", "nobuffer", "udp://" + ip + ":" + chosenPort)
-                        .inheritIO()
-                        .start();
-                Thread.sleep(500);
-            }
+             InputStream in = new BufferedInputStream(socket.getInputStream(), 65536)) {
 
-            out.println(Protocol.STREAM);
+            out.println(Protocol.SAVE);
             out.println(movie);
             out.println(resolution);
-            out.println(format);
-            out.println(protocol);
-            out.println(chosenPort);
+            out.println(selectedFormat);
+            out.println(offset);
             out.flush();
 
-            String response = in.readLine();
-            if (!Protocol.STREAMING.equals(response)) {
-                JOptionPane.showMessageDialog(frame, "Server error: " + response, "Error", JOptionPane.ERROR_MESSAGE);
-                playButton.setEnabled(true);
-                playButton.setText("▶ Play");
-                stopButton.setEnabled(false);
-                return;
+            String response = readLine(in);
+            if (Protocol.BUSY.equals(response)) throw BusyException.parse(readLine(in));
+            if (!Protocol.SAVING.equals(response)) throw new IOException("Server error: " + response);
+            long size = Long.parseLong(readLine(in));
+            long start = Long.parseLong(readLine(in));
+            String sha256 = readLine(in);
+
+            // Ο server ξεκινάει από την αρχή αν το αρχείο του άλλαξε
+            try (FileOutputStream fos = new FileOutputStream(partFile, start > 0)) {
+                byte[] buffer = new byte[65536];
+                long received = start;
+                int read;
+                while (received < size && (read = in.read(buffer, 0, (int) Math.min(buffer.length, size - received))) > 0) {
+                    fos.write(buffer, 0, read);
+                    received += read;
+                }
+                if (received < size) throw new IOException("Connection lost at " + received + "/" + size + " bytes, press Save to resume");
             }
+            if (!sha256.equals(sha256Of(partFile))) {
+                partFile.delete();
+                throw new IOException("Checksum mismatch, download discarded");
+            }
+            Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Γραμμή κειμένου από το stream χωρίς BufferedReader, ώστε τα bytes του αρχείου που ακολουθούν να μη χαθούν
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+        }
+        if (c == -1 && sb.length() == 0) throw new EOFException("Server closed the connection");
+        return sb.toString();
+    }
+
+    private static String sha256Of(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) > 0) digest.update(buffer, 0, read);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void requestAndPlay(String movie, String resolution, String format, String protocol) {
+        ffplayProcess = null;
+        DatagramSocket udpSocket = null;
+        try {
+            String ip = "127.0.0.1";
+            int chosenPort;
 
-            if (protocol.equalsIgnoreCase("TCP")) {
+            // UDP: το socket ανοίγει εδώ, πριν το αίτημα, και τα datagrams περνάνε στο ffplay από το stdin του.
+            // Έτσι δεν χρειάζεται να περιμένουμε να κάνει bind το ffplay.
+            if (protocol.equalsIgnoreCase("UDP")) {
+                udpSocket = new DatagramSocket(0);
+                udpSocket.setReceiveBufferSize(4 * 1024 * 1024);
+                chosenPort = udpSocket.getLocalPort();
                 ffplayProcess = new ProcessBuilder(
-                        "ffplay", "-autoexit", "-fflags", "nobuffer", "tcp://" + ip + ":" + chosenPort)
-                        .inheritIO()
+                        "ffplay", "-autoexit", "-fflags", "nobuffer", "-f", "mpegts", "-i", "pipe:0")
+                        .redirectInput(ProcessBuilder.Redirect.PIPE)
+                        .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
                         .start();
-            } else if (protocol.equalsIgnoreCase("RTP")) {
-                String sdpMarker = in.readLine();
-                if ("SDP".equals(sdpMarker)) {
-                    StringBuilder sdpBuilder = new StringBuilder();
-                    String line;
-                    while ((line = in.readLine()) != null && !"END_SDP".equals(line)) {
-                        sdpBuilder.append(line).append("\n");
-                    }
-                    File sdpFile = File.createTempFile("rtp_", ".sdp");
-                    try (FileWriter fw = new FileWriter(sdpFile)) {
-                        fw.write(sdpBuilder.toString());
-                    }
+                DatagramSocket relaySocket = udpSocket;
+                OutputStream ffplayIn = ffplayProcess.getOutputStream();
+                Thread relay = new Thread(() -> relayDatagrams(relaySocket, ffplayIn), "udp-relay");
+                relay.setDaemon(true);
+                relay.start();
+            } else {
+                chosenPort = protocol.equalsIgnoreCase("RTP") ? RtpPorts.findFreePair() : findFreeUDPPort();
+            }
+
+            long requestStart = System.nanoTime();
+            // Δική του binary σύνδεση μέσω LB, ώστε το L7 routing να το στείλει στον backend του rendition
+            // Το Call μένει ανοιχτό όσο παίζει το ffplay: το κλείσιμό του σταματάει το stream στον server
+            try (ControlConnection.Call call = ControlConnection.stream(movie, resolution, format, protocol, chosenPort)) {
+                currentStream = call;
+                Frame response = call.next();
+                if (response.type() != Frame.STREAMING) {
+                    String error = response.type() == Frame.NOT_FOUND ? Protocol.NOT_FOUND
+                            : response.type() == Frame.BUSY ? new BusyException(response.body().readInt()).getMessage()
+                            : "reply " + response.type();
+                    JOptionPane.showMessageDialog(frame, "Server error: " + error, "Error", JOptionPane.ERROR_MESSAGE);
+                    playButton.setEnabled(true);
+                    playButton.setText("▶ Play");
+                    stopButton.setEnabled(false);
+                    return;
+                }
+                SETUP.get(protocol).record((System.nanoTime() - requestStart) / 1000);
+
+                if (protocol.equalsIgnoreCase("HLS")) {
+                    // Ο server απαντάει με το URL του playlist
+                    String playlistUrl = response.body().readUTF();
                     ffplayProcess = new ProcessBuilder(
-                            "ffplay", "-protocol_whitelist", "file,rtp,udp", "-i", sdpFile.getAbsolutePath())
+                            "ffplay", "-autoexit", playlistUrl)
                             .inheritIO()
                             .start();
+                } else if (protocol.equalsIgnoreCase("ABR")) {
+                    // Master playlist: τα segments τα κατεβάζουμε εμείς και αλλάζουμε rendition ανάλογα με το buffer
+                    AdaptivePlayer player = AdaptivePlayer.open(response.body().readUTF(), connectionSpeed);
+                    ffplayProcess = new ProcessBuilder("ffplay", "-autoexit", "-f", "mpegts", "-i", "pipe:0")
+                            .redirectInput(ProcessBuilder.Redirect.PIPE)
+                            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                            .start();
+                    adaptivePlayer = player;
+                    player.play(ffplayProcess.getOutputStream());
+                } else if (protocol.equalsIgnoreCase("INBAND")) {
+                    // Τα media έρχονται σαν MEDIA frames στην ίδια σύνδεση και πάνε στο stdin του ffplay
+                    ffplayProcess = new ProcessBuilder(
+                            "ffplay", "-autoexit", "-fflags", "nobuffer", "-f", "mpegts", "-i", "pipe:0")
+                            .redirectInput(ProcessBuilder.Redirect.PIPE)
+                            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                            .start();
+                    relayMedia(call, ffplayProcess.getOutputStream(), requestStart);
+                } else {
+                    // Ό,τι χρειάζεται το κάθε πρωτόκολλο γίνεται μόλις το πει ο server, μέχρι το πρώτο πακέτο
+                    boolean waiting = true;
+                    while (waiting) {
+                        Frame event = call.next();
+                        switch (event.type()) {
+                            case Frame.READY -> {
+                                // TCP: ο server ακούει ήδη, το ffplay συνδέεται χωρίς race
+                                ffplayProcess = new ProcessBuilder(
+                                        "ffplay", "-autoexit", "-fflags", "nobuffer", "tcp://" + ip + ":" + chosenPort)
+                                        .inheritIO()
+                                        .start();
+                            }
+                            case Frame.SDP -> {
+                                File sdpFile = File.createTempFile("rtp_", ".sdp");
+                                sdpFile.deleteOnExit();
+                                try (FileWriter fw = new FileWriter(sdpFile)) {
+                                    fw.write(event.body().readUTF());
+                                }
+                                ffplayProcess = new ProcessBuilder(
+                                        "ffplay", "-protocol_whitelist", "file,rtp,udp", "-i", sdpFile.getAbsolutePath())
+                                        .inheritIO()
+                                        .start();
+                                if (!awaitReceiver(ip, chosenPort + 1, ffplayProcess)) {
+                                    waiting = false;
+                                } else {
+                                    call.send(Frame.READY, Frame.EMPTY);
+                                }
+                            }
+                            case Frame.FIRST_PACKET -> {
+                                long micros = (System.nanoTime() - requestStart) / 1000;
+                                FIRST_PACKET.get(protocol).record(micros);
+                                logger.info("Time to first packet (" + protocol + "): " + micros / 1000 + " ms");
+                                waiting = false;
+                            }
+                            default -> waiting = false; // END ή ERROR
+                        }
+                    }
                 }
+                if (ffplayProcess != null) ffplayProcess.waitFor();
             }
-            if (ffplayProcess != null) ffplayProcess.waitFor();
         } catch (Exception ex) {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(frame, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         } finally {
+            if (udpSocket != null) udpSocket.close();
+            adaptivePlayer = null;
+            currentStream = null;
             playButton.setEnabled(true);
             playButton.setText("▶ Play");
             stopButton.setEnabled(false);
@@ -271,19 +466,20 @@ public class VideoClientUI {
     }
 
 
-    private String getAutoProtocol(String resolution) {
-        if (resolution == null) return "TCP";
-        return switch (resolution) {
-            case "240p" -> "TCP";
-            case "360p", "480p" -> "UDP";
-            case "720p", "1080p" -> "RTP";
-            default -> "TCP";
-        };
+    // Από το μετρημένο bitrate του αρχείου: χαμηλά bitrates στη σύνδεση ελέγχου, μεσαία UDP, υψηλά RTP.
+    // Τα όρια είναι τα ονομαστικά bitrates που αντιστοιχούσαν πριν σε 240p/360p-480p/720p-1080p.
+    private String getAutoProtocol(Double mbps) {
+        if (mbps == null || mbps < Constants.BITRATE_360P) return "INBAND";
+        return mbps < Constants.BITRATE_720P ? "UDP" : "RTP";
     }
 
     // Δεν κλείνει το παράθυρο του ffplay
     public void stopVideo() {
         try {
+            AdaptivePlayer player = adaptivePlayer;
+            if (player != null) player.stop();
+            ControlConnection.Call stream = currentStream;
+            if (stream != null) stream.cancel();
             if (ffplayProcess != null && ffplayProcess.isAlive()) {
                 ffplayProcess.destroy();
                 ffplayProcess.destroyForcibly();
@@ -0,0 +1,59 @@
+package loadbalancer;
+
+import shared.Metrics;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ένας backend server με το βάρος του, τις ενεργές συνδέσεις του και την κατάσταση υγείας του
+class Backend {
+    private final InetSocketAddress address;
+    private final int weight;
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean healthy = true;
+    private volatile long busyUntil; // ο backend απάντησε BUSY: εκτός rotation μέχρι τότε (currentTimeMillis)
+    // Bytes που πέρασαν προς (up) και από (down) τον backend
+    final LongAdder bytesUp, bytesDown;
+
+    Backend(InetSocketAddress address, int weight) {
+        this.address = address;
+        this.weight = Math.max(1, weight);
+        String name = address.getHostString() + ":" + address.getPort();
+        bytesUp = Metrics.counter(Metrics.name("lb_backend_bytes_total", "backend", name, "direction", "up"));
+        bytesDown = Metrics.counter(Metrics.name("lb_backend_bytes_total", "backend", name, "direction", "down"));
+        Metrics.gauge(Metrics.name("lb_backend_connections", "backend", name), active::get);
+        Metrics.gauge(Metrics.name("lb_backend_healthy", "backend", name), () -> isHealthy() ? 1 : 0);
+    }
+
+    InetSocketAddress address() { return address; }
+    int weight() { return weight; }
+    int activeConnections() { return active.get(); }
+    boolean isHealthy() { return healthy && System.currentTimeMillis() >= busyUntil; }
+
+    void setHealthy(boolean healthy) {
+        if (this.healthy != healthy) {
+            System.out.println("Backend " + address + (healthy ? " is back in rotation" : " taken out of rotation"));
+        }
+        this.healthy = healthy;
+    }
+
+    void setBusy(long retryAfterMs) {
+        if (System.currentTimeMillis() >= busyUntil) {
+            System.out.println("Backend " + address + " is busy, out of rotation for " + retryAfterMs + " ms");
+        }
+        busyUntil = System.currentTimeMillis() + retryAfterMs;
+    }
+
+    void clearBusy() {
+        busyUntil = 0;
+    }
+
+    void acquire() { active.incrementAndGet(); }
+    void release() { active.decrementAndGet(); }
+
+    @Override
+    public String toString() {
+        return address + " (active=" + active.get() + ", weight=" + weight + (healthy ? "" : ", DOWN")
+                + (System.currentTimeMillis() < busyUntil ? ", BUSY" : "") + ")";
+    }
+}
@@ -0,0 +1,46 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Στρατηγική επιλογής backend. Οι υλοποιήσεις δεν κλειδώνουν: διαβάζουν μόνο atomics/volatile πεδία
+interface BackendSelector {
+    Backend select();
+
+    // Για strategies που δεν κοιτάνε το περιεχόμενο του αιτήματος το key αγνοείται
+    default Backend select(String routingKey) {
+        return select();
+    }
+
+    static BackendSelector forName(String name, List<Backend> backends) {
+        return switch (name.toLowerCase()) {
+            case "roundrobin" -> new RoundRobinSelector(backends);
+            case "weighted" -> new WeightedSelector(backends);
+            case "p2c" -> new PowerOfTwoSelector(backends);
+            case "least" -> new LeastConnectionsSelector(backends);
+            default -> throw new IllegalArgumentException("Unknown load balancing strategy: " + name);
+        };
+    }
+
+    // Αν όλοι είναι down προτιμάμε να δοκιμάσουμε κάποιον παρά να απορρίψουμε τον client
+    static boolean eligible(Backend b, boolean anyHealthy) {
+        return b.isHealthy() || !anyHealthy;
+    }
+
+    // Μία ανάγνωση της υγείας κάθε backend: οι υγιείς, ή όλοι αν δεν υπάρχει κανένας. Ο health checker
+    // αλλάζει την κατάσταση ανάμεσα σε δύο αναγνώσεις, οπότε όποιος αθροίζει βάρη δουλεύει πάνω σε αυτό.
+    static List<Backend> eligible(List<Backend> backends) {
+        List<Backend> healthy = new ArrayList<>(backends.size());
+        for (Backend b : backends) {
+            if (b.isHealthy()) healthy.add(b);
+        }
+        return healthy.isEmpty() ? backends : healthy;
+    }
+
+    static boolean anyHealthy(List<Backend> backends) {
+        for (Backend b : backends) {
+            if (b.isHealthy()) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+package loadbalancer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Consistent hashing with bounded loads: κάθε rendition (π.χ. daft-720p.mp4) πέφτει πάντα
+// στον ίδιο backend ώστε να μένει στο page cache του. Αν ο backend ξεπεράσει το
+// loadFactor x (μέσο φορτίο) συνεχίζουμε δεξιόστροφα στο ring, οπότε ένας δημοφιλής τίτλος
+// απλώνεται σε λίγους γειτονικούς κόμβους αντί για όλους.
+// Αιτήματα χωρίς routing key (LIST, TLS) πάνε στον fallback selector.
+class ConsistentHashSelector implements BackendSelector {
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 100;
+
+    private final List<Backend> backends;
+    private final BackendSelector fallback;
+    private final double loadFactor;
+    private final Backend[] ring;
+    private final long[] ringHashes;
+
+    ConsistentHashSelector(List<Backend> backends, BackendSelector fallback, double loadFactor) {
+        this.backends = backends;
+        this.fallback = fallback;
+        this.loadFactor = loadFactor;
+
+        TreeMap<Long, Backend> points = new TreeMap<>();
+        for (Backend b : backends) {
+            for (int v = 0; v < VIRTUAL_NODES_PER_WEIGHT * b.weight(); v++) {
+                points.put(hash(b.address().getHostString() + ":" + b.address().getPort() + "#" + v), b);
+            }
+        }
+        ring = new Backend[points.size()];
+        ringHashes = new long[points.size()];
+        int i = 0;
+        for (Map.Entry<Long, Backend> e : points.entrySet()) {
+            ringHashes[i] = e.getKey();
+            ring[i++] = e.getValue();
+        }
+    }
+
+    @Override
+    public Backend select() {
+        return fallback.select();
+    }
+
+    @Override
+    public Backend select(String routingKey) {
+        if (routingKey == null || routingKey.isEmpty()) return fallback.select();
+
+        boolean anyHealthy = BackendSelector.anyHealthy(backends);
+        int totalActive = 0, totalWeight = 0;
+        for (Backend b : backends) {
+            if (!BackendSelector.eligible(b, anyHealthy)) continue;
+            totalActive += b.activeConnections();
+            totalWeight += b.weight();
+        }
+        // Χωρητικότητα ανά μονάδα βάρους, μετρώντας και τη νέα σύνδεση
+        double capacityPerWeight = Math.ceil(loadFactor * (totalActive + 1) / totalWeight);
+
+        int start = indexOf(hash(routingKey));
+        Backend firstEligible = null;
+        for (int i = 0; i < ring.length; i++) {
+            Backend b = ring[(start + i) % ring.length];
+            if (!BackendSelector.eligible(b, anyHealthy)) continue;
+            if (firstEligible == null) firstEligible = b;
+            if (b.activeConnections() < capacityPerWeight * b.weight()) return b;
+        }
+        return firstEligible != null ? firstEligible : fallback.select();
+    }
+
+    // Πρώτο σημείο του ring με hash >= h (binary search, wrap-around στο τέλος)
+    private int indexOf(long h) {
+        int lo = 0, hi = ringHashes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ringHashes[mid] < h) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo == ringHashes.length ? 0 : lo;
+    }
+
+    // FNV-1a 64-bit με τελικό mix ώστε τα κοντινά ονόματα να σκορπίζουν στο ring
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
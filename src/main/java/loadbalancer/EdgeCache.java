@@ -0,0 +1,281 @@
+package loadbalancer;
+
+import shared.Metrics;
+import shared.Protocol;
+import shared.VirtualThreads;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Edge cache του load balancer για τα SAVE: ολόκληρα renditions σε αρχεία ενός καταλόγου, memory-mapped, με
+// όριο σε bytes. Hit σερβίρεται από το mapping χωρίς backend. Ταυτόχρονα misses για το ίδιο rendition
+// περιμένουν ένα κοινό fetch (request collapsing). Eviction σε σειρά LRU, αλλά με TinyLFU admission: ένα νέο
+// rendition μπαίνει μόνο αν ζητιέται συχνότερα από όσα θα έβγαζε, οπότε ένα κύμα από σπάνια downloads δεν
+// αδειάζει τον cache από τους δημοφιλείς τίτλους.
+// Σερβίρει κάθε SAVE που περνάει από τον LB: του loadgen, των text clients και τα downloads του GUI, που είναι
+// επίσης text SAVE μέσω LB. Με TLS μέχρι τον backend το αίτημα δεν διαβάζεται, χρειάζεται lb.tlsTerminate.
+class EdgeCache {
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    private static final int SKETCH_SAMPLES_PER_SLOT = 10;
+
+    // Ένα rendition στον cache. Το mapping μένει έγκυρο και μετά το eviction (το αρχείο σβήνεται αλλά
+    // όσοι το σερβίρουν ακόμα κρατάνε το buffer).
+    record Entry(String key, long size, String sha256, MappedByteBuffer data, Path file, long created) {
+        // Η απάντηση του SAVE όπως τη στέλνει ο server: header και τα bytes από το offset
+        ByteBuffer header(long offset) {
+            return ByteBuffer.wrap((Protocol.SAVING + "\n" + size + "\n" + offset + "\n" + sha256 + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        ByteBuffer body(long offset) {
+            return data.duplicate().position((int) offset);
+        }
+    }
+
+    private final Path dir;
+    private final long capacity;
+    private final long maxObject;
+    private final long ttlNanos;
+    private final BackendSelector backends;
+    private final HealthChecker health;
+    private final ExecutorService fetchers = VirtualThreads.executor("edge-fetch");
+    // Σειρά πρόσβασης: το πρώτο είναι το LRU θύμα. Υπό το lock του this, όπως και τα sketch/used/reserved.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long used, reserved;
+    private final Map<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+    private final AtomicLong nextFile = new AtomicLong();
+
+    private final LongAdder hits = Metrics.counter("lb_cache_hits_total");
+    private final LongAdder misses = Metrics.counter("lb_cache_misses_total");
+    private final LongAdder collapsed = Metrics.counter("lb_cache_collapsed_total");
+    private final LongAdder fetches = Metrics.counter("lb_cache_fetches_total");
+    private final LongAdder rejected = Metrics.counter("lb_cache_rejected_total");
+    private final LongAdder evictions = Metrics.counter("lb_cache_evictions_total");
+    final LongAdder bytesServed = Metrics.counter("lb_cache_bytes_served_total");
+
+    EdgeCache(Path dir, long capacity, long maxObject, long ttlSeconds, BackendSelector backends,
+              HealthChecker health) throws IOException {
+        this.dir = dir;
+        this.capacity = capacity;
+        this.maxObject = Math.min(maxObject, Integer.MAX_VALUE); // ένα MappedByteBuffer φτάνει τα 2 GB
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.backends = backends;
+        this.health = health;
+        // Ένα slot ανά 1 MB χωρητικότητας είναι αρκετά για renditions των δεκάδων MB
+        int slots = (int) Math.min(1 << 20, Math.max(1024, capacity >> 20));
+        this.sketch = new FrequencySketch(slots, SKETCH_SAMPLES_PER_SLOT * slots);
+        // Ό,τι έμεινε από προηγούμενη εκτέλεση δεν έχει metadata (sha256), ξεκινάμε άδειοι
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> old = Files.newDirectoryStream(dir, "*.bin")) {
+            for (Path p : old) Files.deleteIfExists(p);
+        }
+        Metrics.gauge("lb_cache_bytes", () -> { synchronized (this) { return used; } });
+        Metrics.gauge("lb_cache_objects", () -> { synchronized (this) { return entries.size(); } });
+    }
+
+    // Το rendition αν είναι στον cache και δεν έχει λήξει. Κάθε lookup μετράει στη συχνότητα του key.
+    Entry lookup(String key) {
+        Entry expired;
+        synchronized (this) {
+            sketch.increment(key);
+            Entry e = entries.get(key);
+            if (e == null) {
+                misses.increment();
+                return null;
+            }
+            if (System.nanoTime() - e.created() < ttlNanos) {
+                hits.increment();
+                return e;
+            }
+            // Ο backend μπορεί να έχει νεότερη έκδοση του αρχείου
+            entries.remove(key);
+            used -= e.size();
+            expired = e;
+            misses.increment();
+        }
+        delete(expired);
+        return null;
+    }
+
+    // Ένα fetch ανά key: όσοι έρχονται όσο τρέχει περιμένουν το ίδιο. null αν δεν μπήκε στον cache
+    // (NOT_FOUND/BUSY, πολύ μεγάλο, απορρίφθηκε από το admission ή σφάλμα), οπότε ο client πάει στον backend.
+    CompletableFuture<Entry> fetch(String key, String movie, String resolution, String format) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            collapsed.increment();
+            return running;
+        }
+        fetches.increment();
+        fetchers.execute(() -> {
+            Entry entry = null;
+            try {
+                entry = download(key, movie, resolution, format);
+            } finally {
+                inflight.remove(key);
+                mine.complete(entry);
+            }
+        });
+        return mine;
+    }
+
+    private Entry download(String key, String movie, String resolution, String format) {
+        // Ένα fetch που τελείωσε ανάμεσα στο lookup και στο fetch του client το έχει ήδη φέρει
+        Entry existing = fresh(key);
+        if (existing != null) return existing;
+        Backend backend = backends.select(key);
+        backend.acquire();
+        try (Socket socket = new Socket()) {
+            try {
+                socket.connect(backend.address(), CONNECT_TIMEOUT_MS);
+            } catch (IOException e) {
+                health.reportFailure(backend);
+                throw e;
+            }
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            OutputStream out = socket.getOutputStream();
+            out.write((Protocol.SAVE + "\n" + movie + "\n" + resolution + "\n" + format + "\n0\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 65536);
+            if (!Protocol.SAVING.equals(readLine(in))) return null;
+            long size = Long.parseLong(readLine(in).trim());
+            readLine(in); // offset, πάντα 0
+            String sha256 = readLine(in).trim();
+            if (size > maxObject || !reserve(key, size)) return null;
+            Path file = dir.resolve(nextFile.incrementAndGet() + ".bin");
+            boolean stored = false;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                ReadableByteChannel source = Channels.newChannel(in);
+                MessageDigest digest = sha256();
+                while (data.hasRemaining()) {
+                    int from = data.position();
+                    if (source.read(data) < 0) throw new EOFException("SAVE cut at " + data.position() + "/" + size);
+                    digest.update(data.slice(from, data.position() - from));
+                }
+                backend.bytesDown.add(size);
+                // Ένα χαλασμένο σώμα θα σερβιριζόταν σε όλους μέχρι το TTL
+                String actual = HexFormat.of().formatHex(digest.digest());
+                if (!actual.equalsIgnoreCase(sha256)) throw new IOException("sha256 mismatch, got " + actual);
+                data.flip();
+                Entry entry = new Entry(key, size, sha256, data, file, System.nanoTime());
+                commit(entry);
+                stored = true;
+                return entry;
+            } finally {
+                if (!stored) {
+                    release(size);
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Edge cache fetch of " + key + " from " + backend.address() + " failed: " + e.getMessage());
+            return null;
+        } finally {
+            backend.release();
+        }
+    }
+
+    // Χώρος για ένα νέο rendition. Τα θύματα διαλέγονται με σειρά LRU και βγαίνουν μόνο αν το νέο key
+    // ζητιέται συχνότερα από όλα τους (TinyLFU), αλλιώς δεν μπαίνει τίποτα.
+    private boolean reserve(String key, long size) {
+        List<Entry> victims = new ArrayList<>();
+        synchronized (this) {
+            if (size > capacity) return false;
+            long free = capacity - used - reserved;
+            if (free < size) {
+                int frequency = sketch.frequency(key);
+                for (Entry e : entries.values()) {
+                    if (free >= size) break;
+                    if (sketch.frequency(e.key()) >= frequency) {
+                        rejected.increment();
+                        return false;
+                    }
+                    victims.add(e);
+                    free += e.size();
+                }
+                if (free < size) return false; // ο υπόλοιπος χώρος είναι κρατημένος από fetches σε εξέλιξη
+                for (Entry e : victims) {
+                    entries.remove(e.key());
+                    used -= e.size();
+                }
+                evictions.add(victims.size());
+            }
+            reserved += size;
+        }
+        for (Entry e : victims) delete(e);
+        return true;
+    }
+
+    private void commit(Entry entry) {
+        Entry replaced;
+        synchronized (this) {
+            reserved -= entry.size();
+            used += entry.size();
+            replaced = entries.put(entry.key(), entry);
+            if (replaced != null) used -= replaced.size();
+        }
+        if (replaced != null) delete(replaced);
+    }
+
+    // Το entry αν υπάρχει και δεν έχει λήξει, χωρίς να μετρήσει σαν αίτημα
+    private synchronized Entry fresh(String key) {
+        Entry e = entries.get(key);
+        return e != null && System.nanoTime() - e.created() < ttlNanos ? e : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized void release(long size) {
+        reserved -= size;
+    }
+
+    private static void delete(Entry e) {
+        try {
+            Files.deleteIfExists(e.file());
+        } catch (IOException ex) {
+            System.err.println("Could not delete cached " + e.file() + ": " + ex.getMessage());
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+        }
+        if (c == -1 && sb.length() == 0) throw new EOFException("backend closed the connection");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "edge cache " + dir + ", " + (capacity >> 20) + " MB, objects up to " + (maxObject >> 20) + " MB";
+    }
+}
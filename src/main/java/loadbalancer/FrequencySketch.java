@@ -0,0 +1,54 @@
+package loadbalancer;
+
+// Count-min sketch για το TinyLFU του EdgeCache: πόσο συχνά ζητήθηκε πρόσφατα ένα key, με 4 γραμμές
+// μετρητών έως 15. Μετά από sampleSize αυξήσεις όλοι οι μετρητές μισοποιούνται, ώστε ό,τι ήταν δημοφιλές
+// παλιά να ξεθωριάζει. Όχι thread-safe: ο EdgeCache το καλεί υπό το lock του.
+class FrequencySketch {
+    private static final int ROWS = 4;
+    private static final int MAX = 15;
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int width, int sampleSize) {
+        int w = Integer.highestOneBit(Math.max(16, width - 1) << 1); // δύναμη του 2
+        this.counters = new byte[ROWS][w];
+        this.mask = w - 1;
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    void increment(String key) {
+        long h = ConsistentHashSelector.hash(key);
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int i = index(h, row);
+            if (counters[row][i] < MAX) {
+                counters[row][i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) age();
+    }
+
+    int frequency(String key) {
+        long h = ConsistentHashSelector.hash(key);
+        int min = MAX;
+        for (int row = 0; row < ROWS; row++) min = Math.min(min, counters[row][index(h, row)]);
+        return min;
+    }
+
+    // Διαφορετικό hash ανά γραμμή από τα δύο μισά του 64-bit hash (double hashing)
+    private int index(long h, int row) {
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        return (h1 + row * h2) & mask;
+    }
+
+    private void age() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) row[i] >>= 1;
+        }
+        additions /= 2;
+    }
+}
@@ -0,0 +1,106 @@
+package loadbalancer;
+
+import shared.Protocol;
+import shared.TlsContexts;
+
+import javax.net.SocketFactory;
+import java.io.*;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Περιοδικά HEALTH probes προς τους backends. Ένας backend βγαίνει από το rotation μετά από
+// FAILURE_THRESHOLD συνεχόμενες αποτυχίες ή αμέσως αν απαντήσει STARTING, και επιστρέφει
+// με το πρώτο UP. Με BUSY μένει εκτός για όσο ζητάει το retry-after ή μέχρι το επόμενο UP.
+class HealthChecker {
+    private static final int FAILURE_THRESHOLD = 2;
+
+    private final List<Backend> backends;
+    private final int intervalMs;
+    private final int timeoutMs;
+    private final Map<Backend, Integer> failures = new ConcurrentHashMap<>();
+    private final SocketFactory socketFactory;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lb-health");
+        t.setDaemon(true);
+        return t;
+    });
+
+    HealthChecker(List<Backend> backends, int intervalMs, int timeoutMs, boolean backendTls) {
+        this.backends = backends;
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+        this.socketFactory = createSocketFactory(backendTls);
+    }
+
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::probeAll, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Παθητικός έλεγχος: αποτυχημένο connect από το proxy μετράει σαν αποτυχημένο probe
+    void reportFailure(Backend backend) {
+        if (failures.merge(backend, 1, Integer::sum) >= FAILURE_THRESHOLD) {
+            backend.setHealthy(false);
+        }
+    }
+
+    private void probeAll() {
+        for (Backend backend : backends) {
+            String[] status = probe(backend);
+            if (status == null) {
+                reportFailure(backend);
+            } else if (Protocol.UP.equals(status[0])) {
+                failures.remove(backend);
+                backend.clearBusy();
+                backend.setHealthy(true);
+            } else if (Protocol.BUSY.equals(status[0])) {
+                // Απαντάει, άρα είναι υγιής, αλλά δεν δέχεται άλλη δουλειά για λίγο
+                failures.remove(backend);
+                backend.setHealthy(true);
+                backend.setBusy(retryAfter(status[1]));
+            } else if (Protocol.STARTING.equals(status[0])) {
+                // Ο backend απαντάει αλλά δεν είναι ακόμα έτοιμος: εκτός rotation αμέσως
+                backend.setHealthy(false);
+            } else {
+                reportFailure(backend);
+            }
+        }
+    }
+
+    // HEALTH αίτημα στο ίδιο port που εξυπηρετεί clients: η κατάσταση και η επόμενη γραμμή (το
+    // retry-after του BUSY), null αν αποτύχει
+    private String[] probe(Backend backend) {
+        try (Socket socket = socketFactory.createSocket()) {
+            socket.connect(backend.address(), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.println(Protocol.HEALTH);
+            String status = in.readLine();
+            if (status == null) return null;
+            return new String[]{status, Protocol.BUSY.equals(status) ? in.readLine() : null};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long retryAfter(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (RuntimeException e) {
+            return intervalMs;
+        }
+    }
+
+    // Όταν οι backends μιλάνε TLS το probe χρειάζεται το truststore του client. Το κοινό context
+    // κάνει resumption, οπότε μόνο το πρώτο probe ανά backend πληρώνει πλήρες handshake.
+    private static SocketFactory createSocketFactory(boolean backendTls) {
+        if (!backendTls) return SocketFactory.getDefault();
+        try {
+            return TlsContexts.client().getSocketFactory();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not load truststore for health checks", e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Διαλέγει τον backend με τις λιγότερες ενεργές συνδέσεις (κανονικοποιημένες με το βάρος)
+class LeastConnectionsSelector implements BackendSelector {
+    private final List<Backend> backends;
+    // Σε ισοπαλία ξεκινάμε από διαφορετικό backend κάθε φορά
+    private final AtomicInteger offset = new AtomicInteger();
+
+    LeastConnectionsSelector(List<Backend> backends) {
+        this.backends = backends;
+    }
+
+    @Override
+    public Backend select() {
+        boolean anyHealthy = BackendSelector.anyHealthy(backends);
+        int n = backends.size();
+        int start = Math.floorMod(offset.getAndIncrement(), n);
+        Backend best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Backend b = backends.get((start + i) % n);
+            if (!BackendSelector.eligible(b, anyHealthy)) continue;
+            double load = (double) b.activeConnections() / b.weight();
+            if (load < bestLoad) {
+                best = b;
+                bestLoad = load;
+            }
+        }
+        return best != null ? best : backends.get(start);
+    }
+}
@@ -1,57 +1,162 @@
 package loadbalancer;
 
 import shared.Constants;
+import shared.HandshakeStats;
+import shared.Metrics;
+import shared.TlsContexts;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLSocket;
 
 public class LoadBalancer {
-    private static final List<InetSocketAddress> SERVERS = new ArrayList<>();
-    private static int nextServer = 0;
+    private static final List<Backend> SERVERS = new ArrayList<>();
+    private static final HandshakeStats HANDSHAKES = new HandshakeStats();
+    static final LongAdder CONNECTIONS = Metrics.counter("lb_connections_total");
+
+    // NIO relay by default, -Dlb.nio=false for the old thread-per-direction mode
+    private static final boolean USE_NIO = Boolean.parseBoolean(System.getProperty("lb.nio", "true"));
+    private static final int LOOPS = Math.max(1, Integer.parseInt(System.getProperty(
+            "lb.loops", String.valueOf(Runtime.getRuntime().availableProcessors() / 2))));
+    private static final int BUFFER_SIZE = Integer.parseInt(System.getProperty("lb.bufferSize", "16384"));
+    // roundrobin | least | weighted | p2c, βάρη ανά backend π.χ. -Dlb.weights=2,1,1
+    private static final String STRATEGY = System.getProperty("lb.strategy", "least");
+    private static final String[] WEIGHTS = System.getProperty("lb.weights", "").split(",");
+    private static final int HEALTH_INTERVAL_MS = Integer.parseInt(System.getProperty("lb.healthIntervalMs", "2000"));
+    // L7: routing ανά rendition με consistent hashing (μόνο σε NIO mode, για plaintext ή TLS-terminated αιτήματα
+    // του text protocol ή binary συνδέσεις με STREAM για πρώτο frame). Οι υπόλοιπες πάνε στο STRATEGY.
+    private static final boolean CONTENT_AWARE = Boolean.parseBoolean(System.getProperty("lb.l7", "false"));
+    private static final double LOAD_FACTOR = Double.parseDouble(System.getProperty("lb.loadFactor", "1.25"));
+    private static final int HEALTH_TIMEOUT_MS = Integer.parseInt(System.getProperty("lb.healthTimeoutMs", "500"));
+    // TLS termination: ένα handshake στον load balancer, plaintext προς τους backends (-Dserver.tls=false εκεί)
+    private static final boolean TLS_TERMINATE = Boolean.parseBoolean(System.getProperty("lb.tlsTerminate", "false"));
+    // Έτοιμες συνδέσεις ανά backend σε κάθε event loop, για να μην περιμένει ο client το connect
+    private static final int POOL_SIZE = Integer.parseInt(System.getProperty("lb.poolSize", "0"));
+    // Edge cache για τα SAVE (μόνο σε NIO mode). Ο LB πρέπει να διαβάζει το αίτημα: plaintext ή lb.tlsTerminate.
+    // Όλα τα SAVE είναι text και περνάνε από τον LB, και του GUI (το createSocket συνδέεται πάντα στον LB).
+    private static final boolean CACHE = Boolean.parseBoolean(System.getProperty("lb.cache", "false"));
+    private static final String CACHE_DIR = System.getProperty("lb.cacheDir",
+            new File(System.getProperty("java.io.tmpdir"), "lb-edge-cache").getPath());
+    private static final long CACHE_MB = Long.getLong("lb.cacheMb", 1024);
+    private static final long CACHE_MAX_OBJECT_MB = Long.getLong("lb.cacheMaxObjectMb", 256);
+    private static final long CACHE_TTL_SECONDS = Long.getLong("lb.cacheTtlSeconds", 300);
 
     static {
         // Δυναμικά γεμίζουμε τη λίστα SERVERS με τις διευθύνσεις των backend servers
         for (int i = 0; i < Constants.NUM_SERVERS; i++) {
             int port = Constants.PORT + i;
-            SERVERS.add(new InetSocketAddress(Constants.SERVER_IP, port));
+            int weight = i < WEIGHTS.length && !WEIGHTS[i].isBlank() ? Integer.parseInt(WEIGHTS[i].trim()) : 1;
+            SERVERS.add(new Backend(new InetSocketAddress(Constants.SERVER_IP, port), weight));
         }
     }
 
     public static void main(String[] args) throws IOException {
+        BackendSelector selector = BackendSelector.forName(STRATEGY, SERVERS);
+        if (CONTENT_AWARE) {
+            selector = new ConsistentHashSelector(SERVERS, selector, LOAD_FACTOR);
+        }
+        HealthChecker health = new HealthChecker(SERVERS, HEALTH_INTERVAL_MS, HEALTH_TIMEOUT_MS,
+                Constants.USE_SSL && !TLS_TERMINATE);
+        health.start();
+        System.out.println("Load balancing strategy: " + (CONTENT_AWARE ? "l7 consistent hash, fallback " : "")
+                + STRATEGY + " over " + SERVERS);
+        Metrics.start("loadbalancer", Constants.LB_METRICS_PORT);
+
+        if (USE_NIO) {
+            new NioProxy(Constants.LOAD_BALANCER_PORT, LOOPS, BUFFER_SIZE, selector, health, CONTENT_AWARE,
+                    TLS_TERMINATE ? TlsContexts.server() : null, SERVERS, POOL_SIZE, edgeCache(selector, health)).run();
+            return;
+        }
+        if (CACHE) System.out.println("Edge cache needs the NIO relay (-Dlb.nio=true), running without it");
 
-        ServerSocket balancerSocket = new ServerSocket(Constants.LOAD_BALANCER_PORT);
-        System.out.println("Load Balancer listening on port " + Constants.LOAD_BALANCER_PORT);
+        registerHandshakes(HANDSHAKES);
+        ServerSocket balancerSocket = TLS_TERMINATE
+                ? TlsContexts.server().getServerSocketFactory().createServerSocket(Constants.LOAD_BALANCER_PORT)
+                : new ServerSocket(Constants.LOAD_BALANCER_PORT);
+        System.out.println("Load Balancer listening on port " + Constants.LOAD_BALANCER_PORT
+                + (TLS_TERMINATE ? " (TLS termination)" : ""));
 
         while (true) {
             Socket clientSocket = balancerSocket.accept();
-            InetSocketAddress backend = SERVERS.get(nextServer);
-            nextServer = (nextServer + 1) % SERVERS.size();
-            new Thread(() -> handle(clientSocket, backend)).start();
+            CONNECTIONS.increment();
+            Backend backend = selector.select();
+            backend.acquire();
+            new Thread(() -> handle(clientSocket, backend, health)).start();
         }
     }
 
-    private static void handle(Socket client, InetSocketAddress backendAddr) {
-        try (Socket backend = new Socket(backendAddr.getAddress(), backendAddr.getPort())) {
-            Thread c2s = new Thread(() -> forward(client, backend));
-            Thread s2c = new Thread(() -> forward(backend, client));
-            c2s.start(); s2c.start();
-            c2s.join(); s2c.join();
+    private static EdgeCache edgeCache(BackendSelector selector, HealthChecker health) throws IOException {
+        if (!CACHE) return null;
+        if (Constants.USE_SSL && !TLS_TERMINATE) {
+            // Με TLS από άκρη σε άκρη ο LB δεν βλέπει ποιο αρχείο ζητήθηκε
+            System.out.println("Edge cache needs -Dlb.tlsTerminate=true when clients use TLS, running without it");
+            return null;
+        }
+        EdgeCache cache = new EdgeCache(Paths.get(CACHE_DIR), CACHE_MB << 20, CACHE_MAX_OBJECT_MB << 20,
+                CACHE_TTL_SECONDS, selector, health);
+        System.out.println("Using " + cache);
+        return cache;
+    }
+
+    private static void handle(Socket client, Backend target, HealthChecker health) {
+        Socket backend;
+        try {
+            backend = new Socket(target.address().getAddress(), target.address().getPort());
+        } catch (IOException e) {
+            System.err.println("Backend " + target.address() + " connect failed: " + e.getMessage());
+            health.reportFailure(target);
+            target.release();
+            try { client.close(); } catch (Exception ignored) {}
+            return;
+        }
+        try (backend) {
+            if (client instanceof SSLSocket ssl) handshake(ssl);
+            // Η μία κατεύθυνση τρέχει στο τρέχον thread, οπότε χρειαζόμαστε ένα thread λιγότερο
+            Thread c2s = new Thread(() -> forward(client, backend, BUFFER_SIZE, target.bytesUp));
+            c2s.start();
+            forward(backend, client, BUFFER_SIZE, target.bytesDown);
+            c2s.join();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
+            target.release();
             try { client.close(); } catch (Exception ignored) {}
         }
     }
 
-    private static void forward(Socket inSock, Socket outSock) {
-        try (InputStream in = inSock.getInputStream();
-             OutputStream out = outSock.getOutputStream()) {
-            byte[] buf = new byte[8192];
+    static void registerHandshakes(HandshakeStats stats) {
+        Metrics.gauge(Metrics.name("lb_tls_handshakes_total", "kind", "full"), stats::full);
+        Metrics.gauge(Metrics.name("lb_tls_handshakes_total", "kind", "resumed"), stats::resumed);
+    }
+
+    private static void handshake(SSLSocket ssl) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        ssl.startHandshake();
+        boolean resumed = HandshakeStats.isResumed(ssl.getSession(), startMillis);
+        if (HANDSHAKES.record(System.nanoTime() - start, resumed) % 100 == 0) {
+            System.out.println(HANDSHAKES.summary());
+        }
+    }
+
+    static void forward(Socket inSock, Socket outSock, int bufferSize) {
+        forward(inSock, outSock, bufferSize, new LongAdder());
+    }
+
+    static void forward(Socket inSock, Socket outSock, int bufferSize, LongAdder bytes) {
+        try {
+            InputStream in = inSock.getInputStream();
+            OutputStream out = outSock.getOutputStream();
+            byte[] buf = new byte[bufferSize];
             int n;
             while ((n = in.read(buf)) != -1) {
                 out.write(buf, 0, n);
-                out.flush();
+                bytes.add(n);
             }
+            // Half-close: περνάμε το EOF στην άλλη πλευρά χωρίς να κλείσουμε το socket
+            outSock.shutdownOutput();
         } catch (Exception ignored) {}
     }
 }
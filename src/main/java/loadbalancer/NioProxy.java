@@ -0,0 +1,470 @@
+package loadbalancer;
+
+import shared.HandshakeStats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.net.ssl.SSLContext;
+
+// Selector-based relay: ένα acceptor thread και λίγα event loops αντί για δύο blocked threads ανά σύνδεση.
+// Κάθε σύνδεση κρατάει μόνο δύο direct buffers (ένα ανά κατεύθυνση) από το pool του loop της.
+class NioProxy {
+    private static final long POOL_RETRY_MS = 1000;
+
+    private final int port;
+    private final EventLoop[] loops;
+    private final boolean tls;
+
+    // contentAware: διαβάζουμε πρώτα τις γραμμές του αιτήματος και μετά διαλέγουμε backend.
+    // tlsContext != null: το TLS τερματίζεται εδώ και οι backends μιλάνε plaintext.
+    // poolSize: τόσες έτοιμες (ήδη connected) συνδέσεις ανά backend σε κάθε loop.
+    // cache != null: τα SAVE σερβίρονται από τον EdgeCache όταν γίνεται.
+    NioProxy(int port, int loopCount, int bufferSize, BackendSelector selector, HealthChecker health,
+             boolean contentAware, SSLContext tlsContext, List<Backend> backends, int poolSize,
+             EdgeCache cache) throws IOException {
+        this.port = port;
+        this.loops = new EventLoop[loopCount];
+        this.tls = tlsContext != null;
+        HandshakeStats handshakes = new HandshakeStats();
+        LoadBalancer.registerHandshakes(handshakes);
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(bufferSize, selector, health, contentAware, tlsContext, handshakes, backends, poolSize,
+                    cache);
+        }
+    }
+
+    void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            Thread t = new Thread(loops[i], "lb-loop-" + i);
+            t.start();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Load Balancer (NIO, " + loops.length + " loops" + (loops[0].contentAware ? ", L7" : "")
+                    + (loops[0].cache != null ? ", edge cache" : "")
+                    + (tls ? ", TLS termination" : "") + ") listening on port " + port);
+            int next = 0;
+            while (true) {
+                SocketChannel client = server.accept();
+                LoadBalancer.CONNECTIONS.increment();
+                loops[next].register(client);
+                next = (next + 1) % loops.length;
+            }
+        }
+    }
+
+    // Ό,τι μπορεί να είναι attachment ενός SelectionKey του loop
+    private interface Handler {
+        void handle(SelectionKey key) throws IOException;
+
+        void failed(Exception e);
+    }
+
+    private static final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // από άλλα threads (edge fetch)
+        private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+        private final int bufferSize;
+        private final BackendSelector backends;
+        private final HealthChecker health;
+        private final boolean contentAware;
+        private final SSLContext tlsContext;
+        private final HandshakeStats handshakes;
+        private final List<Backend> servers;
+        private final int poolSize;
+        private final EdgeCache cache;
+        private final Map<Backend, ArrayDeque<PooledBackend>> idle = new HashMap<>();
+        private final Map<Backend, Long> poolRetryAt = new HashMap<>();
+
+        EventLoop(int bufferSize, BackendSelector backends, HealthChecker health, boolean contentAware,
+                  SSLContext tlsContext, HandshakeStats handshakes, List<Backend> servers, int poolSize,
+                  EdgeCache cache) throws IOException {
+            this.selector = Selector.open();
+            this.bufferSize = bufferSize;
+            this.backends = backends;
+            this.health = health;
+            this.contentAware = contentAware;
+            this.tlsContext = tlsContext;
+            this.handshakes = handshakes;
+            this.servers = servers;
+            this.poolSize = poolSize;
+            this.cache = cache;
+            for (Backend b : servers) idle.put(b, new ArrayDeque<>());
+        }
+
+        void register(SocketChannel client) {
+            pending.add(new Connection(this, client));
+            selector.wakeup();
+        }
+
+        // Τρέχει στο thread του loop, όπου ζουν όλα τα κανάλια του
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    if (poolSize > 0) {
+                        topUpPool();
+                        selector.select(POOL_RETRY_MS);
+                    } else {
+                        selector.select();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                Connection c;
+                while ((c = pending.poll()) != null) {
+                    try {
+                        c.open(selector);
+                    } catch (IOException | RuntimeException e) {
+                        if (e instanceof RuntimeException) e.printStackTrace();
+                        c.failed(e);
+                    }
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        handler.handle(key);
+                    } catch (IOException | CancelledKeyException e) {
+                        handler.failed(e);
+                    } catch (RuntimeException e) {
+                        // Ένα bug σε μία σύνδεση κλείνει μόνο αυτήν, όχι όλο το loop και τις συνδέσεις του
+                        e.printStackTrace();
+                        handler.failed(e);
+                    }
+                }
+            }
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buf = pool.poll();
+            return buf != null ? buf : ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void release(ByteBuffer buf) {
+            buf.clear();
+            pool.push(buf);
+        }
+
+        // Μια ήδη connected σύνδεση προς τον backend, αν υπάρχει
+        PooledBackend takeIdle(Backend backend) {
+            ArrayDeque<PooledBackend> queue = idle.get(backend);
+            if (queue == null) return null;
+            for (Iterator<PooledBackend> it = queue.iterator(); it.hasNext(); ) {
+                PooledBackend p = it.next();
+                if (p.connected && p.key.isValid()) {
+                    it.remove();
+                    return p;
+                }
+            }
+            return null;
+        }
+
+        // Κρατάει poolSize συνδέσεις ανά υγιή backend, με καθυστέρηση μετά από αποτυχία
+        private void topUpPool() {
+            long now = System.currentTimeMillis();
+            for (Backend backend : servers) {
+                if (!backend.isHealthy() || poolRetryAt.getOrDefault(backend, 0L) > now) continue;
+                ArrayDeque<PooledBackend> queue = idle.get(backend);
+                while (queue.size() < poolSize) {
+                    try {
+                        queue.add(new PooledBackend(this, backend));
+                    } catch (IOException e) {
+                        poolRetryAt.put(backend, now + POOL_RETRY_MS);
+                        break;
+                    }
+                }
+            }
+        }
+
+        void poolFailed(PooledBackend p) {
+            idle.get(p.backend).remove(p);
+            poolRetryAt.put(p.backend, System.currentTimeMillis() + POOL_RETRY_MS);
+        }
+    }
+
+    // Προ-συνδεδεμένη σύνδεση προς backend που περιμένει client. Όσο είναι idle ακούμε για read,
+    // ώστε να καταλάβουμε αν ο backend την έκλεισε.
+    private static final class PooledBackend implements Handler {
+        private final EventLoop loop;
+        private final Backend backend;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private boolean connected;
+
+        PooledBackend(EventLoop loop, Backend backend) throws IOException {
+            this.loop = loop;
+            this.backend = backend;
+            this.channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = channel.connect(backend.address());
+            key = channel.register(loop.selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+        }
+
+        @Override
+        public void handle(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                connected = channel.finishConnect();
+                if (connected) key.interestOps(SelectionKey.OP_READ);
+            } else if (key.isReadable()) {
+                throw new IOException("idle backend connection closed");
+            }
+        }
+
+        @Override
+        public void failed(Exception e) {
+            try { channel.close(); } catch (IOException ignored) {}
+            loop.poolFailed(this);
+            if (!connected) loop.health.reportFailure(backend);
+        }
+    }
+
+    // Μια σύνδεση client<->backend. Οι buffers μένουν πάντα σε "fill" mode:
+    // position() = bytes που περιμένουν να γραφτούν στην άλλη πλευρά.
+    private static final class Connection implements Handler {
+        private final EventLoop loop;
+        private final SocketChannel client;
+        private TlsEndpoint tls; // null όταν το TLS περνάει αυτούσιο στον backend
+        private Backend target;
+        private SocketChannel backend;
+        private SelectionKey clientKey, backendKey;
+        private ByteBuffer up, down; // up: client→backend, down: backend→client
+        private boolean connected, clientEof, backendEof, upShut, downShut, closed;
+        private boolean fetching; // περιμένει fetch του EdgeCache, χωρίς interest ops
+        private ByteBuffer cached; // σερβίρεται από τον EdgeCache: ό,τι μένει να γραφτεί από το mapping
+
+        Connection(EventLoop loop, SocketChannel client) {
+            this.loop = loop;
+            this.client = client;
+        }
+
+        void open(Selector selector) throws IOException {
+            up = loop.acquire();
+            down = loop.acquire();
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (loop.tlsContext != null) tls = new TlsEndpoint(client, loop.tlsContext, loop.handshakes);
+            clientKey = client.register(selector, 0, this);
+            if (loop.contentAware || loop.cache != null) {
+                clientKey.interestOps(SelectionKey.OP_READ); // peek πριν διαλέξουμε backend
+            } else {
+                connectBackend(loop.backends.select());
+            }
+        }
+
+        private void connectBackend(Backend chosen) throws IOException {
+            target = chosen;
+            target.acquire();
+            PooledBackend pooled = loop.takeIdle(chosen);
+            if (pooled != null) {
+                backend = pooled.channel;
+                backendKey = pooled.key;
+                backendKey.attach(this);
+                connected = true;
+            } else {
+                backend = SocketChannel.open();
+                backend.configureBlocking(false);
+                backend.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connected = backend.connect(target.address());
+                backendKey = backend.register(clientKey.selector(), 0, this);
+            }
+            updateInterest();
+        }
+
+        @Override
+        public void handle(SelectionKey key) throws IOException {
+            if (!key.isValid() || fetching) return;
+            if (cached != null) {
+                writeCached();
+                return;
+            }
+            if (target == null) {
+                // Τα bytes μένουν στον up buffer και προωθούνται μόλις συνδεθεί ο backend
+                if (key.isReadable() || hasBufferedInput()) clientEof = readClient() < 0;
+                writeClient(); // απαντήσεις του TLS handshake
+                boolean complete = clientEof || !up.hasRemaining();
+                RequestPeek.Save save = loop.cache != null ? RequestPeek.save(up, up.position(), complete)
+                        : RequestPeek.NOT_SAVE;
+                String routingKey = !loop.contentAware ? RequestPeek.NO_KEY
+                        : RequestPeek.routingKey(up, up.position(), complete);
+                if (save != null && save != RequestPeek.NOT_SAVE) {
+                    fromCache(save);
+                } else if (save != null && routingKey != null) {
+                    connectBackend(loop.backends.select(routingKey));
+                } else {
+                    clientKey.interestOps(SelectionKey.OP_READ | (clientPending() ? SelectionKey.OP_WRITE : 0));
+                }
+                return;
+            }
+            if (key == backendKey && key.isConnectable()) {
+                connected = backend.finishConnect();
+            }
+            if (key == backendKey && key.isReadable()) {
+                int n = backend.read(down);
+                if (n > 0) target.bytesDown.add(n);
+                backendEof = n < 0;
+            }
+            if (((key == clientKey && key.isReadable()) || hasBufferedInput()) && !clientEof && up.hasRemaining()) {
+                clientEof = readClient() < 0;
+            }
+            if (connected) {
+                target.bytesUp.add(flush(up, backend));
+            }
+            writeClient();
+
+            // Half-close: μόλις μια πλευρά κλείσει και αδειάσει ο buffer, περνάμε το FIN απέναντι
+            if (connected && clientEof && !upShut && up.position() == 0) {
+                backend.shutdownOutput();
+                upShut = true;
+            }
+            if (backendEof && !downShut && !clientPending()) {
+                if (tls != null) tls.shutdownOutput(); else client.shutdownOutput();
+                downShut = true;
+            }
+            if (upShut && downShut) {
+                close();
+            } else {
+                updateInterest();
+            }
+        }
+
+        // Hit: απάντηση από τον cache. Miss: περιμένουμε το κοινό fetch και, αν δεν μπει στον cache
+        // (NOT_FOUND, BUSY, admission), το αίτημα που είναι ακόμα στον up buffer πάει κανονικά σε backend.
+        private void fromCache(RequestPeek.Save save) throws IOException {
+            EdgeCache.Entry hit = loop.cache.lookup(save.key());
+            if (hit != null) {
+                serve(hit, save.offset());
+                return;
+            }
+            fetching = true;
+            clientKey.interestOps(0);
+            loop.cache.fetch(save.key(), save.movie(), save.resolution(), save.format())
+                    .thenAccept(entry -> loop.execute(() -> fetched(entry, save)));
+        }
+
+        private void fetched(EdgeCache.Entry entry, RequestPeek.Save save) {
+            fetching = false;
+            if (closed) return;
+            try {
+                if (entry != null) serve(entry, save.offset());
+                else connectBackend(loop.backends.select(save.key()));
+            } catch (IOException | CancelledKeyException e) {
+                failed(e);
+            }
+        }
+
+        private void serve(EdgeCache.Entry entry, long offset) throws IOException {
+            if (offset < 0 || offset > entry.size()) offset = 0; // όπως ο server: άλλη έκδοση, από την αρχή
+            up.clear(); // το αίτημα απαντήθηκε
+            down.put(entry.header(offset));
+            cached = entry.body(offset);
+            writeCached();
+        }
+
+        // Γεμίζει τον down από το mapping όσο ο client προλαβαίνει, και κλείνει όταν φύγουν όλα
+        private void writeCached() throws IOException {
+            while (true) {
+                int n = Math.min(cached.remaining(), down.remaining());
+                if (n > 0) {
+                    down.put(cached.slice(cached.position(), n));
+                    cached.position(cached.position() + n);
+                    loop.cache.bytesServed.add(n);
+                }
+                writeClient();
+                if (clientPending()) break;
+                if (!cached.hasRemaining()) {
+                    if (tls != null) tls.shutdownOutput(); else client.shutdownOutput();
+                    close();
+                    return;
+                }
+            }
+            clientKey.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        private int readClient() throws IOException {
+            return tls == null ? client.read(up) : tls.read(up);
+        }
+
+        private void writeClient() throws IOException {
+            if (tls == null) flush(down, client); else tls.write(down);
+        }
+
+        private boolean hasBufferedInput() {
+            return tls != null && tls.hasBufferedInput();
+        }
+
+        private boolean clientPending() {
+            return down.position() > 0 || (tls != null && tls.pendingWrite());
+        }
+
+        private static int flush(ByteBuffer buf, SocketChannel out) throws IOException {
+            if (buf.position() == 0) return 0;
+            buf.flip();
+            int n = out.write(buf);
+            buf.compact();
+            return n;
+        }
+
+        // Backpressure: διαβάζουμε από μια πλευρά μόνο όσο υπάρχει χώρος στον buffer της
+        private void updateInterest() {
+            int clientOps = 0;
+            if (!clientEof && up.hasRemaining()) clientOps |= SelectionKey.OP_READ;
+            if (clientPending()) clientOps |= SelectionKey.OP_WRITE;
+
+            int backendOps;
+            if (!connected) {
+                backendOps = SelectionKey.OP_CONNECT;
+            } else {
+                backendOps = 0;
+                if (!backendEof && down.hasRemaining()) backendOps |= SelectionKey.OP_READ;
+                if (up.position() > 0) backendOps |= SelectionKey.OP_WRITE;
+            }
+            clientKey.interestOps(clientOps);
+            backendKey.interestOps(backendOps);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            if (target != null && !connected) {
+                System.err.println("Backend " + target.address() + " connect failed: " + e.getMessage());
+                loop.health.reportFailure(target);
+            }
+            close();
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            try { client.close(); } catch (IOException ignored) {}
+            if (backend != null) {
+                try { backend.close(); } catch (IOException ignored) {}
+            }
+            if (target != null) target.release();
+            if (up != null) loop.release(up);
+            if (down != null) loop.release(down);
+        }
+    }
+}
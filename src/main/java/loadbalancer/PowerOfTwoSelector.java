@@ -0,0 +1,30 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Power of two choices: δύο διαφορετικοί τυχαίοι υγιείς backends, κρατάμε αυτόν με το μικρότερο φορτίο
+class PowerOfTwoSelector implements BackendSelector {
+    private final List<Backend> backends;
+
+    PowerOfTwoSelector(List<Backend> backends) {
+        this.backends = backends;
+    }
+
+    @Override
+    public Backend select() {
+        List<Backend> eligible = BackendSelector.eligible(backends);
+        int n = eligible.size();
+        if (n == 1) return eligible.get(0);
+        // Ομοιόμορφα δύο διαφορετικές θέσεις της λίστας των eligible: το j παραλείπει το i
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) j++;
+        Backend a = eligible.get(i);
+        Backend b = eligible.get(j);
+        double loadA = (double) a.activeConnections() / a.weight();
+        double loadB = (double) b.activeConnections() / b.weight();
+        return loadA <= loadB ? a : b;
+    }
+}
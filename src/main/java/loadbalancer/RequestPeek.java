@@ -0,0 +1,98 @@
+package loadbalancer;
+
+import shared.Frame;
+import shared.Protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Διαβάζει τις πρώτες γραμμές ενός αιτήματος (χωρίς να τις καταναλώνει) για L7 routing.
+// STREAM/SAVE -> "movie-resolution.format", οτιδήποτε άλλο (LIST, TLS ClientHello) -> NO_KEY.
+// Τα SAVE είναι πάντα text, και του GUI client (download μέσω LB), οπότε έχουν key και φτάνουν στον EdgeCache.
+// Binary σύνδεση: key μόνο αν το πρώτο frame είναι STREAM, όπως στις συνδέσεις που ανοίγει ο GUI client ανά
+// stream. Η persistent σύνδεση του (LIST, STATS, PROBE) πάει ολόκληρη στον fallback selector.
+class RequestPeek {
+    static final String NO_KEY = "";
+    private static final byte TLS_HANDSHAKE = 0x16;
+
+    // Ένα SAVE με όλες τις γραμμές του, για τον EdgeCache
+    record Save(String movie, String resolution, String format, long offset) {
+        String key() {
+            return movie + "-" + resolution + "." + format;
+        }
+    }
+
+    static final Save NOT_SAVE = new Save("", "", "", 0);
+
+    // Επιστρέφει null αν χρειάζονται κι άλλα bytes για να αποφασίσουμε
+    static String routingKey(ByteBuffer buf, int length, boolean complete) {
+        if (length == 0) return complete ? NO_KEY : null;
+        if (buf.get(0) == TLS_HANDSHAKE) return NO_KEY;
+        if (buf.get(0) == (byte) Frame.MAGIC) return streamFrameKey(buf, length, complete);
+        String[] lines = lines(buf, length, 4);
+        if (lines.length > 0 && !Protocol.STREAM.equals(lines[0]) && !Protocol.SAVE.equals(lines[0])) return NO_KEY;
+        if (lines.length < 4) return complete ? NO_KEY : null;
+        return lines[1] + "-" + lines[2] + "." + lines[3];
+    }
+
+    // Το SAVE του αιτήματος, NOT_SAVE για οτιδήποτε άλλο, null αν χρειάζονται κι άλλα bytes.
+    // Χωρίς γραμμή offset (παλιοί clients, EOF μετά το format) το offset είναι 0, όπως στον server.
+    static Save save(ByteBuffer buf, int length, boolean complete) {
+        if (length == 0) return complete ? NOT_SAVE : null;
+        if (buf.get(0) == TLS_HANDSHAKE || buf.get(0) == (byte) Frame.MAGIC) return NOT_SAVE;
+        String[] lines = lines(buf, length, 5);
+        if (lines.length > 0 && !Protocol.SAVE.equals(lines[0])) return NOT_SAVE;
+        if (lines.length < 5 && !(complete && lines.length == 4)) return complete ? NOT_SAVE : null;
+        long offset = 0;
+        if (lines.length == 5 && !lines[4].isBlank()) {
+            try {
+                offset = Long.parseLong(lines[4].trim());
+            } catch (NumberFormatException e) {
+                return NOT_SAVE; // ο server θα απαντήσει όπως απαντάει
+            }
+        }
+        return new Save(lines[1], lines[2], lines[3], offset);
+    }
+
+    // MAGIC και μετά [int length][int requestId][byte type][payload]. Για STREAM το payload ξεκινάει με
+    // UTF movie, resolution, format, το ίδιο key με το text STREAM.
+    private static String streamFrameKey(ByteBuffer buf, int length, boolean complete) {
+        int header = 1 + 4 + 4 + 1;
+        if (length < header) return complete ? NO_KEY : null;
+        int frameLength = buf.getInt(1);
+        if (buf.get(1 + 4 + 4) != Frame.STREAM || frameLength < 5 || frameLength > Frame.MAX_LENGTH) return NO_KEY;
+        if (length < 1 + 4 + frameLength) return complete ? NO_KEY : null;
+        byte[] payload = new byte[frameLength - 5];
+        for (int i = 0; i < payload.length; i++) payload[i] = buf.get(header + i);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            return in.readUTF() + "-" + in.readUTF() + "." + in.readUTF();
+        } catch (IOException e) {
+            return NO_KEY; // χαλασμένο frame, ο server θα απαντήσει όπως απαντάει
+        }
+    }
+
+    // Οι πρώτες max πλήρεις γραμμές (χωρίς \r\n), λιγότερες αν δεν έχουν έρθει ακόμα
+    private static String[] lines(ByteBuffer buf, int length, int max) {
+        String[] lines = new String[max];
+        int count = 0, lineStart = 0;
+        for (int i = 0; i < length && count < max; i++) {
+            if (buf.get(i) != '\n') continue;
+            int end = i;
+            if (end > lineStart && buf.get(end - 1) == '\r') end--;
+            lines[count++] = ascii(buf, lineStart, end);
+            lineStart = i + 1;
+        }
+        return count == max ? lines : Arrays.copyOf(lines, count);
+    }
+
+    private static String ascii(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) bytes[i - from] = buf.get(i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RoundRobinSelector implements BackendSelector {
+    private final List<Backend> backends;
+    private final AtomicInteger next = new AtomicInteger();
+
+    RoundRobinSelector(List<Backend> backends) {
+        this.backends = backends;
+    }
+
+    @Override
+    public Backend select() {
+        boolean anyHealthy = BackendSelector.anyHealthy(backends);
+        int n = backends.size();
+        for (int i = 0; i < n; i++) {
+            Backend b = backends.get(Math.floorMod(next.getAndIncrement(), n));
+            if (BackendSelector.eligible(b, anyHealthy)) return b;
+        }
+        return backends.get(0);
+    }
+}
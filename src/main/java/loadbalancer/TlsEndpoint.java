@@ -0,0 +1,152 @@
+package loadbalancer;
+
+import shared.HandshakeStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.*;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+
+// TLS termination για τη non-blocking σύνδεση ενός client. Το SSLEngine αποκρυπτογραφεί προς τον up buffer
+// και κρυπτογραφεί από τον down, οπότε ο relay και το L7 peek βλέπουν plaintext.
+// Όλοι οι buffers είναι σε "fill" mode, όπως στο Connection.
+final class TlsEndpoint {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final ByteBuffer netIn;  // κρυπτογραφημένα bytes από τον client που δεν έχουν γίνει unwrap
+    private final ByteBuffer appIn;  // plaintext που δεν χώρεσε ακόμα στον up buffer
+    private final ByteBuffer netOut; // κρυπτογραφημένα bytes που περιμένουν να γραφτούν στον client
+    private final HandshakeStats stats;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private boolean handshaking = true, inboundDone;
+
+    TlsEndpoint(SocketChannel channel, SSLContext context, HandshakeStats stats) throws IOException {
+        this.channel = channel;
+        this.stats = stats;
+        this.engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        SSLSession session = engine.getSession();
+        netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+        appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+        netOut = ByteBuffer.allocate(2 * session.getPacketBufferSize());
+        engine.beginHandshake();
+    }
+
+    // Διαβάζει από το socket και δίνει όσο plaintext χωράει στον dst.
+    // -1 όταν ο client έκλεισε (close_notify ή EOF) και δεν έχει μείνει τίποτα.
+    int read(ByteBuffer dst) throws IOException {
+        boolean eof = false;
+        if (!inboundDone && netIn.hasRemaining()) eof = channel.read(netIn) < 0;
+        int produced = 0;
+        while (true) {
+            produced += moveAppIn(dst);
+            if (appIn.position() > 0 || inboundDone) break; // ο dst γέμισε ή δεν θα έρθει τίποτα άλλο
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            progressHandshake(result.getHandshakeStatus());
+            if (result.getStatus() == Status.CLOSED) {
+                inboundDone = true;
+            } else if (result.getStatus() == Status.BUFFER_UNDERFLOW) {
+                break; // μισό record, περιμένουμε κι άλλα bytes
+            } else if (result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                    && engine.getHandshakeStatus() != HandshakeStatus.NEED_UNWRAP) {
+                break;
+            }
+        }
+        if (eof && !inboundDone) {
+            inboundDone = true;
+            try { engine.closeInbound(); } catch (SSLException ignored) {} // EOF χωρίς close_notify
+        }
+        return produced == 0 && inboundDone && appIn.position() == 0 ? -1 : produced;
+    }
+
+    // Κρυπτογραφεί ό,τι μπορεί από τον src και το γράφει. Ό,τι δεν γράφτηκε μένει στον netOut.
+    void write(ByteBuffer src) throws IOException {
+        flushNet();
+        progressHandshake(engine.getHandshakeStatus());
+        if (!handshaking && src.position() > 0) {
+            src.flip();
+            try {
+                while (src.hasRemaining()) {
+                    SSLEngineResult result = engine.wrap(src, netOut);
+                    if (result.getStatus() == Status.CLOSED) break;
+                    if (result.getStatus() == Status.BUFFER_OVERFLOW && !flushNet()) break;
+                }
+            } finally {
+                src.compact();
+            }
+        }
+        flushNet();
+    }
+
+    // Υπάρχει plaintext που δεν έχει δοθεί, χωρίς να χρειάζεται νέο read event
+    boolean hasBufferedInput() {
+        return appIn.position() > 0;
+    }
+
+    boolean pendingWrite() {
+        return netOut.position() > 0 || engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP;
+    }
+
+    // close_notify και μετά FIN
+    void shutdownOutput() throws IOException {
+        engine.closeOutbound();
+        while (!engine.isOutboundDone()) {
+            SSLEngineResult result = engine.wrap(EMPTY, netOut);
+            if (result.getStatus() == Status.BUFFER_OVERFLOW && !flushNet()) break;
+            if (result.getStatus() == Status.CLOSED) break;
+        }
+        flushNet();
+        channel.shutdownOutput();
+    }
+
+    private void progressHandshake(HandshakeStatus status) throws IOException {
+        while (true) {
+            if (status == HandshakeStatus.NEED_TASK) {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) task.run();
+                status = engine.getHandshakeStatus();
+            } else if (status == HandshakeStatus.NEED_WRAP) {
+                SSLEngineResult result = engine.wrap(EMPTY, netOut);
+                if (result.getStatus() == Status.BUFFER_OVERFLOW && !flushNet()) return; // συνεχίζει στο OP_WRITE
+                if (result.getStatus() == Status.CLOSED) return;
+                status = result.getHandshakeStatus();
+            } else {
+                break;
+            }
+        }
+        if (handshaking && (status == HandshakeStatus.FINISHED || status == HandshakeStatus.NOT_HANDSHAKING)) {
+            handshaking = false;
+            long nanos = System.nanoTime() - startNanos;
+            if (stats.record(nanos, HandshakeStats.isResumed(engine.getSession(), startMillis)) % 100 == 0) {
+                System.out.println(stats.summary());
+            }
+        }
+    }
+
+    private int moveAppIn(ByteBuffer dst) {
+        if (appIn.position() == 0) return 0;
+        appIn.flip();
+        int n = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.slice();
+        slice.limit(n);
+        dst.put(slice);
+        appIn.position(appIn.position() + n);
+        appIn.compact();
+        return n;
+    }
+
+    private boolean flushNet() throws IOException {
+        if (netOut.position() == 0) return true;
+        netOut.flip();
+        channel.write(netOut);
+        netOut.compact();
+        return netOut.position() == 0;
+    }
+}
@@ -0,0 +1,27 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Τυχαία επιλογή με πιθανότητα ανάλογη του βάρους κάθε υγιούς backend
+class WeightedSelector implements BackendSelector {
+    private final List<Backend> backends;
+
+    WeightedSelector(List<Backend> backends) {
+        this.backends = backends;
+    }
+
+    @Override
+    public Backend select() {
+        List<Backend> eligible = BackendSelector.eligible(backends);
+        int total = 0;
+        for (Backend b : eligible) total += b.weight();
+        if (total <= 0) return backends.get(0);
+        int r = ThreadLocalRandom.current().nextInt(total);
+        for (Backend b : eligible) {
+            r -= b.weight();
+            if (r < 0) return b;
+        }
+        return eligible.get(0);
+    }
+}
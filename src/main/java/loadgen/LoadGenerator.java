@@ -0,0 +1,181 @@
+package loadgen;
+
+import shared.BusyException;
+import shared.Constants;
+import shared.LatencyHistogram;
+import shared.Protocol;
+import shared.TlsContexts;
+import shared.VirtualThreads;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLSocket;
+
+// Headless load generator: N viewers που μπαίνουν σταδιακά (ramp) και κάνουν LIST/STREAM/SAVE με το
+// text protocol μέσω του load balancer, πετώντας τα media. Στο τέλος latency percentiles ανά εντολή, TTFB και
+// bitrate ανά πρωτόκολλο, stalls και συνολικό throughput. Χωρίς ffmpeg: ο server με -Dserver.stubSources=true.
+//
+//   java -Dloadgen.clients=2000 -Dloadgen.mix=LIST:20,STREAM:70,SAVE:10 -Dloadgen.protocols=INBAND:1,UDP:2,RTP:1 \
+//        -cp ... loadgen.LoadGenerator
+public class LoadGenerator {
+    static final int CLIENTS = Integer.getInteger("loadgen.clients", 100);
+    static final int RAMP_SECONDS = Integer.getInteger("loadgen.rampSeconds", 10);
+    static final int DURATION_SECONDS = Integer.getInteger("loadgen.durationSeconds", 60);
+    static final Mix OPS = Mix.parse(System.getProperty("loadgen.mix", "LIST:30,STREAM:60,SAVE:10"));
+    static final Mix PROTOCOLS = Mix.parse(System.getProperty("loadgen.protocols", "TCP:1,UDP:1,RTP:1"));
+    static final String FORMAT = System.getProperty("loadgen.format", "mp4");
+    static final double SPEED = Double.parseDouble(System.getProperty("loadgen.speed", "100"));
+    static final long THINK_MS = Long.getLong("loadgen.thinkMs", 1000);
+    static final int MAX_STREAM_SECONDS = Integer.getInteger("loadgen.maxStreamSeconds", 20);
+    static final int IDLE_TIMEOUT_MS = Integer.getInteger("loadgen.idleTimeoutMs", 5000);
+    static final long STALL_MS = Long.getLong("loadgen.stallMs", 500);
+    static final String HOST = System.getProperty("loadgen.host", Constants.LOAD_BALANCER_IP);
+    static final int PORT = Integer.getInteger("loadgen.port", Constants.LOAD_BALANCER_PORT);
+    static final String MEDIA_HOST = System.getProperty("loadgen.mediaHost", "127.0.0.1"); // TCP streams
+    static final boolean TLS = Boolean.parseBoolean(System.getProperty("loadgen.tls", String.valueOf(Constants.USE_SSL)));
+    private static final int REPORT_SECONDS = Integer.getInteger("loadgen.reportSeconds", 5);
+
+    public static void main(String[] args) throws Exception {
+        List<String[]> catalog = fetchCatalog();
+        if (catalog.isEmpty()) {
+            System.err.println("No " + FORMAT + " videos on the server, nothing to request");
+            System.exit(1);
+        }
+        System.out.println("Load generator: " + CLIENTS + " viewers over " + RAMP_SECONDS + " s ramp, "
+                + DURATION_SECONDS + " s total, mix " + OPS + ", protocols " + PROTOCOLS + ", "
+                + catalog.size() + " videos, " + (VirtualThreads.AVAILABLE ? "virtual threads" : "platform threads"));
+
+        LoadStats stats = new LoadStats();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        ExecutorService viewers = VirtualThreads.executor("viewer");
+        Thread reporter = new Thread(() -> report(stats, start), "loadgen-report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        // Ramp: ο viewer i ξεκινάει στο i/N του ramp
+        for (int i = 0; i < CLIENTS; i++) {
+            long due = start + TimeUnit.SECONDS.toNanos(RAMP_SECONDS) * i / CLIENTS;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            viewers.execute(new Viewer(stats, catalog, deadline, i));
+        }
+        viewers.shutdown();
+        // Όσα streams είναι σε εξέλιξη στο deadline τελειώνουν μέσα σε MAX_STREAM_SECONDS
+        viewers.awaitTermination(DURATION_SECONDS + MAX_STREAM_SECONDS + 30L, TimeUnit.SECONDS);
+        finalReport(stats, (System.nanoTime() - start) / 1e9);
+        System.exit(0);
+    }
+
+    static Socket connect() throws IOException {
+        if (!TLS) return new Socket(HOST, PORT);
+        SSLSocket socket = (SSLSocket) TlsContexts.client().getSocketFactory().createSocket(HOST, PORT);
+        socket.startHandshake();
+        return socket;
+    }
+
+    // Όλα τα βίντεο του format (με μεγάλη ταχύτητα για να μην κοπεί κανένα resolution)
+    private static List<String[]> fetchCatalog() throws IOException {
+        List<String[]> catalog = new ArrayList<>();
+        try (Socket socket = connect();
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            out.println(Protocol.LIST);
+            out.println(Double.MAX_VALUE);
+            out.println(FORMAT);
+            out.flush();
+            String first = in.readLine();
+            if (Protocol.BUSY.equals(first)) throw BusyException.parse(in.readLine());
+            int count = Integer.parseInt(first.trim());
+            for (int i = 0; i < count; i++) {
+                String[] parts = in.readLine().split(","); // movie,resolution,kbps
+                if (parts.length >= 2) catalog.add(new String[]{parts[0], parts[1]});
+            }
+        }
+        return catalog;
+    }
+
+    private static void report(LoadStats stats, long start) {
+        long lastOps = 0, lastBytes = 0;
+        while (true) {
+            try {
+                Thread.sleep(REPORT_SECONDS * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long ops = stats.ops.sum(), bytes = stats.bytes.sum();
+            System.out.printf("t=%ds viewers=%d streams=%d ops=%d (%.1f/s) errors=%d recv=%.1f Mbps stalls=%d%n",
+                    (System.nanoTime() - start) / 1_000_000_000L, stats.activeViewers.get(), stats.activeStreams.get(),
+                    ops, (ops - lastOps) / (double) REPORT_SECONDS, stats.errorCount(),
+                    (bytes - lastBytes) * 8 / 1e6 / REPORT_SECONDS, stats.stalls.sum());
+            lastOps = ops;
+            lastBytes = bytes;
+        }
+    }
+
+    private static void finalReport(LoadStats stats, double seconds) {
+        System.out.printf("%n=== %d viewers, %.1f s, %d ops (%.1f ops/s), %d errors ===%n", CLIENTS, seconds,
+                stats.ops.sum(), stats.ops.sum() / seconds, stats.errorCount());
+        System.out.println("Latency (ms), STREAM ως το STREAMING:");
+        print(stats.latency, 1000.0);
+        System.out.println("Time to first media byte (ms):");
+        print(stats.ttfb, 1000.0);
+        System.out.println("Average bitrate per stream/download (kbps):");
+        print(stats.bitrate, 1.0);
+        if (!stats.errors.isEmpty()) {
+            System.out.println("Errors:");
+            new TreeMap<>(stats.errors).forEach((op, n) -> System.out.println("  " + op + ": " + n.sum()));
+        }
+        System.out.printf("Received %.1f MB (%.1f Mbps), %d stalls > %d ms (%.1f s total)%n",
+                stats.bytes.sum() / 1e6, stats.bytes.sum() * 8 / 1e6 / seconds, stats.stalls.sum(), STALL_MS,
+                stats.stallMillis.sum() / 1000.0);
+    }
+
+    private static void print(Map<String, LatencyHistogram> histograms, double scale) {
+        new TreeMap<>(histograms).forEach((name, h) -> System.out.println("  " + name + ": " + h.summary(scale)));
+    }
+
+    // Βάρη του τύπου "LIST:30,STREAM:60,SAVE:10"
+    record Mix(String[] names, int[] cumulative) {
+        static Mix parse(String spec) {
+            List<String> names = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split(":");
+                if (kv[0].isEmpty()) continue;
+                int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+                if (weight <= 0) continue;
+                names.add(kv[0].trim().toUpperCase());
+                weights.add(weight);
+            }
+            if (names.isEmpty()) throw new IllegalArgumentException("Empty mix: " + spec);
+            int[] cumulative = new int[weights.size()];
+            int total = 0;
+            for (int i = 0; i < cumulative.length; i++) cumulative[i] = total += weights.get(i);
+            return new Mix(names.toArray(new String[0]), cumulative);
+        }
+
+        String pick(Random random) {
+            int r = random.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (r < cumulative[i]) return names[i];
+            }
+            return names[names.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(names[i]).append(':').append(cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]));
+            }
+            return sb.toString();
+        }
+    }
+}
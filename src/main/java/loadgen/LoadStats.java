@@ -0,0 +1,43 @@
+package loadgen;
+
+import shared.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Μετρήσεις όλων των viewers. Latencies σε μικροδευτερόλεπτα, bitrate σε kbps.
+class LoadStats {
+    final Map<String, LatencyHistogram> latency = new ConcurrentHashMap<>();   // ανά εντολή (LIST, STREAM/TCP, SAVE...)
+    final Map<String, LatencyHistogram> ttfb = new ConcurrentHashMap<>();      // πρώτο byte media ανά πρωτόκολλο
+    final Map<String, LatencyHistogram> bitrate = new ConcurrentHashMap<>();   // μέσο bitrate ανά stream/download
+    final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    final LongAdder ops = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder stalls = new LongAdder();
+    final LongAdder stallMillis = new LongAdder();
+    final AtomicInteger activeViewers = new AtomicInteger();
+    final AtomicInteger activeStreams = new AtomicInteger();
+
+    void latency(String op, long micros) {
+        latency.computeIfAbsent(op, k -> new LatencyHistogram()).record(micros);
+        ops.increment();
+    }
+
+    void ttfb(String protocol, long micros) {
+        ttfb.computeIfAbsent(protocol, k -> new LatencyHistogram()).record(micros);
+    }
+
+    void bitrate(String protocol, long kbps) {
+        bitrate.computeIfAbsent(protocol, k -> new LatencyHistogram()).record(kbps);
+    }
+
+    void error(String op) {
+        errors.computeIfAbsent(op, k -> new LongAdder()).increment();
+    }
+
+    long errorCount() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
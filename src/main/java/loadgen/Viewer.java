@@ -0,0 +1,291 @@
+package loadgen;
+
+import shared.BusyException;
+import shared.Protocol;
+import shared.RtpPorts;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Ένας headless client: LIST/STREAM/SAVE με το text protocol, όπως ο StreamingClient, αλλά τα media
+// διαβάζονται και πετιούνται αντί να πάνε σε ffplay. Κάθε αίτημα ανοίγει δική του σύνδεση.
+class Viewer implements Runnable {
+    private final LoadStats stats;
+    private final List<String[]> catalog; // {movie, resolution}
+    private final long deadline;
+    private final Random random;
+
+    Viewer(LoadStats stats, List<String[]> catalog, long deadline, long seed) {
+        this.stats = stats;
+        this.catalog = catalog;
+        this.deadline = deadline;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        stats.activeViewers.incrementAndGet();
+        try {
+            while (System.nanoTime() < deadline) {
+                String op = LoadGenerator.OPS.pick(random);
+                String[] video = catalog.get(random.nextInt(catalog.size()));
+                String label = op;
+                try {
+                    switch (op) {
+                        case Protocol.LIST -> list();
+                        case Protocol.SAVE -> save(video);
+                        default -> {
+                            String protocol = LoadGenerator.PROTOCOLS.pick(random);
+                            label = op + "/" + protocol;
+                            stream(video, protocol);
+                        }
+                    }
+                } catch (BusyException e) {
+                    stats.error(label + " BUSY");
+                } catch (IOException e) {
+                    stats.error(label);
+                }
+                // Εκθετικός χρόνος σκέψης ανάμεσα στα αιτήματα
+                long think = (long) (-Math.log(1 - random.nextDouble()) * LoadGenerator.THINK_MS);
+                if (think > 0) Thread.sleep(Math.min(think, Math.max(0, (deadline - System.nanoTime()) / 1_000_000)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.activeViewers.decrementAndGet();
+        }
+    }
+
+    private void list() throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = LoadGenerator.connect()) {
+            PrintWriter out = writer(socket);
+            out.println(Protocol.LIST);
+            out.println(LoadGenerator.SPEED);
+            out.println(LoadGenerator.FORMAT);
+            out.flush();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String first = readLine(in);
+            if (Protocol.BUSY.equals(first)) throw BusyException.parse(readLine(in));
+            int count = Integer.parseInt(first.trim());
+            for (int i = 0; i < count; i++) readLine(in);
+        }
+        stats.latency(Protocol.LIST, micros(start));
+    }
+
+    // SAVE από την αρχή: latency ως το τελευταίο byte, TTFB ως το πρώτο
+    private void save(String[] video) throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = LoadGenerator.connect()) {
+            PrintWriter out = writer(socket);
+            out.println(Protocol.SAVE);
+            out.println(video[0]);
+            out.println(video[1]);
+            out.println(LoadGenerator.FORMAT);
+            out.println(0);
+            out.flush();
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 65536);
+            String response = readLine(in);
+            if (Protocol.BUSY.equals(response)) throw BusyException.parse(readLine(in));
+            if (!Protocol.SAVING.equals(response)) throw new IOException("SAVE: " + response);
+            long size = Long.parseLong(readLine(in));
+            readLine(in); // offset
+            readLine(in); // sha256
+            Consumer consumer = new Consumer(Protocol.SAVE, start);
+            byte[] buffer = new byte[65536];
+            long received = 0;
+            int n;
+            while (received < size && (n = in.read(buffer, 0, (int) Math.min(buffer.length, size - received))) > 0) {
+                received += n;
+                consumer.received(n);
+            }
+            consumer.finish();
+            if (received < size) throw new IOException("SAVE cut at " + received + "/" + size);
+        }
+        stats.latency(Protocol.SAVE, micros(start));
+    }
+
+    private void stream(String[] video, String protocol) throws IOException {
+        long start = System.nanoTime();
+        String label = Protocol.STREAM + "/" + protocol;
+        DatagramSocket udp = null;
+        DatagramChannel[] rtp = null;
+        try (Socket control = LoadGenerator.connect()) {
+            int port;
+            if (protocol.equals("UDP")) {
+                udp = new DatagramSocket(0);
+                udp.setReceiveBufferSize(1 << 20);
+                port = udp.getLocalPort();
+            } else if (protocol.equals("RTP")) {
+                rtp = RtpPorts.bindPair(new InetSocketAddress(0).getAddress());
+                port = rtp[0].socket().getLocalPort();
+            } else if (protocol.equals("INBAND")) {
+                port = 0; // τα media έρχονται από την ίδια σύνδεση
+            } else {
+                try (ServerSocket probe = new ServerSocket(0)) {
+                    port = probe.getLocalPort();
+                }
+            }
+            PrintWriter out = writer(control);
+            out.println(Protocol.STREAM);
+            out.println(video[0]);
+            out.println(video[1]);
+            out.println(LoadGenerator.FORMAT);
+            out.println(protocol);
+            out.println(port);
+            out.flush();
+
+            InputStream in = new BufferedInputStream(control.getInputStream());
+            String response = readLine(in);
+            if (Protocol.BUSY.equals(response)) throw BusyException.parse(readLine(in));
+            if (!Protocol.STREAMING.equals(response)) throw new IOException("STREAM: " + response);
+            // Setup latency: ως το STREAMING, τα media μετράνε στο TTFB
+            stats.latency(label, micros(start));
+
+            stats.activeStreams.incrementAndGet();
+            try {
+                if (protocol.equals("TCP")) {
+                    expect(in, Protocol.READY);
+                    consumeTcp(port, protocol, start);
+                } else if (protocol.equals("INBAND")) {
+                    control.setSoTimeout(LoadGenerator.IDLE_TIMEOUT_MS);
+                    consumeStream(in, protocol, start);
+                } else {
+                    if (rtp != null) {
+                        expect(in, Protocol.SDP);
+                        while (!Protocol.END_SDP.equals(readLine(in))) {}
+                        out.println(Protocol.READY);
+                        out.flush();
+                    }
+                    DatagramSocket socket = udp != null ? udp : rtp[0].socket();
+                    consumeDatagrams(socket, control, in, protocol, start);
+                }
+            } finally {
+                stats.activeStreams.decrementAndGet();
+            }
+        } finally {
+            if (udp != null) udp.close();
+            if (rtp != null) for (var ch : rtp) ch.close();
+        }
+    }
+
+    private void consumeTcp(int port, String protocol, long start) throws IOException {
+        try (Socket media = new Socket()) {
+            media.connect(new InetSocketAddress(LoadGenerator.MEDIA_HOST, port), 5000);
+            media.setSoTimeout(LoadGenerator.IDLE_TIMEOUT_MS);
+            consumeStream(media.getInputStream(), protocol, start);
+        }
+    }
+
+    // Ως το EOF, σιωπή για IDLE_TIMEOUT_MS ή MAX_STREAM_SECONDS
+    private void consumeStream(InputStream in, String protocol, long start) throws IOException {
+        Consumer consumer = new Consumer(protocol, start);
+        byte[] buffer = new byte[65536];
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(LoadGenerator.MAX_STREAM_SECONDS);
+        int n;
+        try {
+            while (System.nanoTime() < end && (n = in.read(buffer)) > 0) consumer.received(n);
+        } catch (SocketTimeoutException e) {
+            // ο server σταμάτησε να στέλνει, το μετράμε σαν τέλος
+        }
+        consumer.finish();
+    }
+
+    // Ως το τέλος του stream (ο server κλείνει τη σύνδεση ελέγχου), σιωπή για IDLE_TIMEOUT_MS ή MAX_STREAM_SECONDS
+    private void consumeDatagrams(DatagramSocket socket, Socket control, InputStream controlIn, String protocol,
+                                  long start) throws IOException {
+        socket.setSoTimeout(200);
+        control.setSoTimeout(1);
+        Consumer consumer = new Consumer(protocol, start);
+        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(LoadGenerator.MAX_STREAM_SECONDS);
+        long lastPacket = System.nanoTime();
+        while (System.nanoTime() < end) {
+            try {
+                socket.receive(packet);
+                consumer.received(packet.getLength());
+                lastPacket = System.nanoTime();
+            } catch (SocketTimeoutException e) {
+                if ((System.nanoTime() - lastPacket) / 1_000_000 > LoadGenerator.IDLE_TIMEOUT_MS) break;
+                if (controlClosed(controlIn)) break;
+            }
+        }
+        consumer.finish();
+    }
+
+    private static boolean controlClosed(InputStream in) {
+        try {
+            while (true) {
+                if (in.read() == -1) return true; // FIRST_PACKET κτλ. αγνοούνται
+            }
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // Bytes ενός stream: TTFB, stalls (κενά πάνω από STALL_MS μετά το πρώτο byte) και μέσο bitrate
+    private class Consumer {
+        private final String protocol;
+        private final long start;
+        private long first, last, bytes;
+
+        Consumer(String protocol, long start) {
+            this.protocol = protocol;
+            this.start = start;
+        }
+
+        void received(int n) {
+            long now = System.nanoTime();
+            if (bytes == 0) {
+                first = now;
+                stats.ttfb(protocol, (now - start) / 1000);
+            } else {
+                long gapMs = (now - last) / 1_000_000;
+                if (gapMs > LoadGenerator.STALL_MS) {
+                    stats.stalls.increment();
+                    stats.stallMillis.add(gapMs);
+                }
+            }
+            last = now;
+            bytes += n;
+            stats.bytes.add(n);
+        }
+
+        void finish() throws IOException {
+            if (bytes == 0) throw new IOException(protocol + ": no media received");
+            double seconds = (last - first) / 1e9;
+            if (seconds > 0.5) stats.bitrate(protocol, (long) (bytes * 8 / seconds / 1000));
+        }
+    }
+
+    private static void expect(InputStream in, String expected) throws IOException {
+        String line = readLine(in);
+        if (!expected.equals(line)) throw new IOException("Expected " + expected + ", got " + line);
+    }
+
+    private static PrintWriter writer(Socket socket) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), false);
+    }
+
+    // Όπως στο VideoClientUI: χωρίς BufferedReader, ώστε τα bytes που ακολουθούν να μείνουν στο stream
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+        }
+        if (c == -1 && sb.length() == 0) throw new EOFException("Server closed the connection");
+        return sb.toString();
+    }
+
+    private static long micros(long start) {
+        return (System.nanoTime() - start) / 1000;
+    }
+}
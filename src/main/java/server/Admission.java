@@ -0,0 +1,189 @@
+package server;
+
+import shared.BusyException;
+import shared.Frame;
+import shared.Metrics;
+import shared.Protocol;
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLSocket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Admission control: όριο στις ταυτόχρονες control sessions κάθε listener (node) και στα live encodes
+// (ffmpeg sources) όλης της διεργασίας. Πέρα από τα όρια ο client παίρνει BUSY με retry-after αντί να
+// ξεκινάνε απεριόριστα threads και ffmpeg, και ο load balancer βγάζει τον node από το rotation μέχρι τότε.
+// Μια σύνδεση πιάνει session μόλις φέρει αίτημα: οι idle συνδέσεις (π.χ. το pool του load balancer) δεν
+// κρατάνε θέσεις, και κλείνουν μετά από IDLE_TIMEOUT_MS χωρίς αίτημα.
+class Admission {
+    private static final Logger logger = LogManager.getLogger(Admission.class);
+    static final int MAX_SESSIONS = Integer.getInteger("server.maxSessions", 1000);
+    // Ένα -re encode σε live ρυθμό θέλει κλάσμα ενός core (το TS με -c copy σχεδόν τίποτα)
+    static final int MAX_ENCODES = Integer.getInteger("server.maxEncodes",
+            Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+    private static final long RETRY_MS = Long.getLong("server.busyRetryMs", 2000);
+    // BUSY απαντήσεις σε εξέλιξη (κάθε μία μπορεί να θέλει TLS handshake). Πέρα από αυτές απλό close.
+    private static final int MAX_REJECTING = 64;
+    private static final int REJECT_TIMEOUT_MS = 2000;
+    private static final int DRAIN_MS = 500;
+    private static final int IDLE_TIMEOUT_MS = Integer.getInteger("server.idleTimeoutMs", 30000);
+    // Συνδέσεις που περιμένουν το πρώτο τους αίτημα, η καθεμία με ένα thread
+    private static final int MAX_WAITING = Integer.getInteger("server.maxWaiting", 1000);
+
+    private static final Semaphore encodes = new Semaphore(MAX_ENCODES);
+    private static final Semaphore rejecting = new Semaphore(MAX_REJECTING);
+    private static final LongAdder BUSY_SESSIONS = Metrics.counter(Metrics.name("server_busy_total", "reason", "sessions"));
+    private static final LongAdder BUSY_ENCODES = Metrics.counter(Metrics.name("server_busy_total", "reason", "encodes"));
+    private static final LongAdder BUSY_WAITING = Metrics.counter(Metrics.name("server_busy_total", "reason", "waiting"));
+    private static final LongAdder BUSY_CALLS = Metrics.counter(Metrics.name("server_busy_total", "reason", "calls"));
+
+    static {
+        Metrics.gauge("server_encodes", () -> MAX_ENCODES - encodes.availablePermits());
+    }
+
+    interface Launcher {
+        Process start() throws IOException;
+    }
+
+    private final Semaphore sessions = new Semaphore(MAX_SESSIONS);
+    private final Semaphore waiting = new Semaphore(MAX_WAITING);
+    private final ExecutorService executor;
+
+    Admission(int port, ExecutorService executor) {
+        this.executor = executor;
+        Metrics.gauge(Metrics.name("server_control_sessions", "port", String.valueOf(port)),
+                () -> MAX_SESSIONS - sessions.availablePermits());
+    }
+
+    // Νέα σύνδεση: περιμένει το πρώτο αίτημα και μετά ClientHandler αν υπάρχει θέση, αλλιώς BUSY
+    void admit(Socket socket) {
+        if (!waiting.tryAcquire()) {
+            BUSY_WAITING.increment();
+            close(socket);
+            return;
+        }
+        executor.execute(() -> {
+            InputStream in;
+            try {
+                in = awaitRequest(socket);
+            } finally {
+                waiting.release();
+            }
+            if (in == null) {
+                close(socket);
+                return;
+            }
+            if (sessions.tryAcquire()) {
+                try {
+                    new ClientHandler(socket, in).run();
+                } finally {
+                    sessions.release();
+                }
+                return;
+            }
+            BUSY_SESSIONS.increment();
+            if (!rejecting.tryAcquire()) {
+                close(socket);
+                return;
+            }
+            try {
+                reject(socket, in);
+            } finally {
+                rejecting.release();
+                close(socket);
+            }
+        });
+    }
+
+    // TLS handshake και πρώτο byte μέσα σε IDLE_TIMEOUT_MS. null αν δεν ήρθε αίτημα.
+    private static InputStream awaitRequest(Socket socket) {
+        try {
+            socket.setSoTimeout(IDLE_TIMEOUT_MS);
+            if (socket instanceof SSLSocket ssl) ClientHandler.handshake(ssl);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            in.mark(1);
+            if (in.read() < 0) return null;
+            in.reset();
+            socket.setSoTimeout(0);
+            return in;
+        } catch (IOException e) {
+            logger.debug("No request from " + socket.getInetAddress() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Ένα live encode: το permit κρατιέται μέχρι να τερματίσει η διεργασία
+    static Process encode(Launcher launcher) throws IOException {
+        if (!encodes.tryAcquire()) {
+            BUSY_ENCODES.increment();
+            throw new BusyException(retryAfterMs());
+        }
+        Process process;
+        try {
+            process = launcher.start();
+        } catch (IOException | RuntimeException e) {
+            encodes.release();
+            throw e;
+        }
+        process.onExit().whenComplete((p, e) -> encodes.release());
+        return process;
+    }
+
+    // Για το HEALTH και για έλεγχο πριν απαντήσουμε STREAMING. Ένα encode μπορεί να πιαστεί στο μεταξύ,
+    // οπότε το encode() παραμένει ο τελικός έλεγχος.
+    static boolean encodesFull() {
+        return encodes.availablePermits() == 0;
+    }
+
+    static void busyEncodes() {
+        BUSY_ENCODES.increment();
+    }
+
+    // Binary σύνδεση με MAX_CALLS streams/probes ήδη σε εξέλιξη
+    static void busyCalls() {
+        BUSY_CALLS.increment();
+    }
+
+    // Με jitter, ώστε οι clients που απορρίφθηκαν μαζί να μην ξαναέρθουν μαζί
+    static long retryAfterMs() {
+        return RETRY_MS + ThreadLocalRandom.current().nextLong(RETRY_MS / 2 + 1);
+    }
+
+    // BUSY στο protocol του client: σε binary σύνδεση για το requestId του πρώτου frame, σε text σαν γραμμές
+    private static void reject(Socket socket, InputStream in) {
+        long retry = retryAfterMs();
+        try {
+            socket.setSoTimeout(REJECT_TIMEOUT_MS);
+            OutputStream out = socket.getOutputStream();
+            if (in.read() == Frame.MAGIC) {
+                Frame frame = Frame.read(new DataInputStream(in));
+                if (frame == null) return;
+                Frame.write(new DataOutputStream(new BufferedOutputStream(out)), frame.requestId(), Frame.BUSY,
+                        Frame.payload(o -> o.writeInt((int) retry)));
+            } else {
+                out.write((Protocol.BUSY + "\n" + retry + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            // Close με αδιάβαστα bytes στέλνει RST, που μπορεί να χάσει το BUSY στον client: διαβάζουμε ό,τι
+            // έστειλε ακόμα, μέχρι να κλείσει ή για λίγο
+            socket.setSoTimeout(DRAIN_MS);
+            byte[] drain = new byte[4096];
+            try {
+                while (in.read(drain) != -1) {}
+            } catch (SocketTimeoutException ignored) {
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send BUSY to " + socket.getInetAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private static void close(Socket socket) {
+        try { socket.close(); } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,254 @@
+package server;
+
+import shared.Frame;
+import shared.LatencyHistogram;
+import shared.Metrics;
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Persistent σύνδεση με binary frames. Τα LIST και STATS απαντώνται αμέσως από το reader thread,
+// κάθε STREAM τρέχει σε δικό του thread του pool γιατί κρατάει όσο παίζει το βίντεο (το ίδιο και τα PROBE bursts).
+class BinarySession {
+    private static final Logger logger = LogManager.getLogger(BinarySession.class);
+    private static final int PROBE_MAX_BYTES = Integer.getInteger("probe.maxBytes", 8 << 20);
+    private static final int PROBE_CHUNK = 64 * 1024;
+    // STREAM/PROBE σε εξέλιξη ανά σύνδεση: μία σύνδεση κρατάει ένα permit του Admission, όχι απεριόριστα threads
+    private static final int MAX_CALLS = Integer.getInteger("server.maxCallsPerConnection", 8);
+    // Τυχαία bytes: δεν συμπιέζονται πουθενά στη διαδρομή, οπότε μετράμε το πραγματικό bandwidth
+    private static final byte[] NOISE = new byte[PROBE_CHUNK];
+    private static final LatencyHistogram LIST_LATENCY =
+            Metrics.histogram(Metrics.name("server_list_micros", "protocol", "binary"));
+
+    static {
+        new Random().nextBytes(NOISE);
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    // requestId -> READY του client για RTP streams που περιμένουν
+    private final Map<Integer, CompletableFuture<Boolean>> clientReady = new ConcurrentHashMap<>();
+    // requestId -> streams που παίζουν, για CANCEL, keepalives και το EOF της σύνδεσης
+    private final Map<Integer, SessionRegistry.Session> streams = new ConcurrentHashMap<>();
+    // STREAM που τρέχουν και CANCEL που ήρθαν πριν το watch() τους, για να μη χαθούν
+    private final Set<Integer> streamCalls = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> cancelled = ConcurrentHashMap.newKeySet();
+    private volatile boolean keepalives, disconnected;
+    private final Semaphore calls = new Semaphore(MAX_CALLS);
+
+    BinarySession(Socket socket, InputStream in) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(in);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    void run() throws IOException {
+        try {
+            Frame frame;
+            while ((frame = Frame.read(in)) != null) {
+                dispatch(frame);
+            }
+        } finally {
+            // Ο client έφυγε: κανένα από τα streams του δεν έχει πια viewer
+            disconnected = true;
+            clientReady.values().forEach(ready -> ready.complete(false));
+            streams.values().forEach(session -> session.end(SessionRegistry.EOF));
+        }
+    }
+
+    private void dispatch(Frame frame) throws IOException {
+        DataInputStream body = frame.body();
+        switch (frame.type()) {
+            case Frame.LIST -> {
+                double speed = body.readDouble();
+                String format = body.readUTF();
+                long start = System.nanoTime();
+                send(frame.requestId(), Frame.LISTING, Catalog.get().binaryListing(format, speed));
+                LIST_LATENCY.record((System.nanoTime() - start) / 1000);
+            }
+            case Frame.STATS -> send(frame.requestId(), Frame.STATS_RESULT, stats());
+            case Frame.STREAM -> {
+                String movie = body.readUTF();
+                String resolution = body.readUTF();
+                String format = body.readUTF();
+                String protocol = body.readUTF();
+                int port = body.readInt();
+                int id = frame.requestId();
+                if (!admitCall(id)) return;
+                clientReady.put(id, new CompletableFuture<>());
+                streamCalls.add(id);
+                ServerMain.handlers().execute(() -> {
+                    try {
+                        StreamSession.run(movie, resolution, format, protocol, port, socket, new FrameControl(id));
+                    } catch (Exception e) {
+                        logger.warn("Stream " + id + " failed: " + e.getMessage());
+                    } finally {
+                        clientReady.remove(id);
+                        streams.remove(id);
+                        streamCalls.remove(id);
+                        cancelled.remove(id);
+                        calls.release();
+                        send(id, Frame.END, Frame.EMPTY);
+                    }
+                });
+            }
+            case Frame.PROBE -> {
+                int bytes = Math.max(0, Math.min(body.readInt(), PROBE_MAX_BYTES));
+                int id = frame.requestId();
+                if (!admitCall(id)) return;
+                ServerMain.handlers().execute(() -> {
+                    try {
+                        probe(id, bytes);
+                    } finally {
+                        calls.release();
+                    }
+                });
+            }
+            case Frame.READY -> {
+                CompletableFuture<Boolean> ready = clientReady.get(frame.requestId());
+                if (ready != null) ready.complete(true);
+            }
+            case Frame.CANCEL -> {
+                // Πριν το READY ενός RTP stream δεν υπάρχει ακόμα session, το setup απλά σταματάει.
+                // Αν το session δεν έχει γραφτεί ακόμα, το watch() βρίσκει το id στα cancelled.
+                int id = frame.requestId();
+                CompletableFuture<Boolean> ready = clientReady.get(id);
+                if (ready != null) ready.complete(false);
+                if (streamCalls.contains(id)) cancelled.add(id);
+                SessionRegistry.Session session = streams.get(id);
+                if (session != null) session.end(SessionRegistry.CANCEL);
+            }
+            case Frame.KEEPALIVE -> {
+                keepalives = true;
+                streams.values().forEach(SessionRegistry.Session::alive);
+            }
+            default -> send(frame.requestId(), Frame.ERROR, utf("Unknown frame type " + frame.type()));
+        }
+    }
+
+    // Θέση για ένα ακόμα STREAM/PROBE της σύνδεσης, αλλιώς BUSY με retry-after όπως στο text protocol
+    private boolean admitCall(int id) {
+        if (calls.tryAcquire()) return true;
+        Admission.busyCalls();
+        send(id, Frame.BUSY, ByteBuffer.allocate(4).putInt((int) Admission.retryAfterMs()).array());
+        return false;
+    }
+
+    // Ένα κενό PROBE_DATA αμέσως (RTT) και μετά το burst σε chunks, ώστε να μην καθυστερεί τις άλλες απαντήσεις
+    private void probe(int id, int bytes) {
+        send(id, Frame.PROBE_DATA, Frame.EMPTY);
+        for (int sent = 0; sent < bytes; sent += PROBE_CHUNK) {
+            int length = Math.min(PROBE_CHUNK, bytes - sent);
+            send(id, Frame.PROBE_DATA, length == PROBE_CHUNK ? NOISE : Arrays.copyOf(NOISE, length));
+        }
+        send(id, Frame.END, Frame.EMPTY);
+    }
+
+    private static byte[] stats() throws IOException {
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("ready", String.valueOf(ServerMain.isReady()));
+        stats.put("videos", String.valueOf(Catalog.get().size()));
+        stats.put("liveStreams", String.valueOf(StreamHub.liveStreams()));
+        stats.put("viewers", String.valueOf(StreamHub.viewers()));
+        stats.put("streamSessions", String.valueOf(SessionRegistry.active()));
+        stats.put("transcodesQueued", String.valueOf(VideoGenerator.scheduler().queueDepth()));
+        stats.put("transcodesRunning", String.valueOf(VideoGenerator.scheduler().running().size()));
+        stats.put("tlsFullHandshakes", String.valueOf(ClientHandler.TLS_HANDSHAKES.full()));
+        stats.put("tlsResumedHandshakes", String.valueOf(ClientHandler.TLS_HANDSHAKES.resumed()));
+        return Frame.payload(o -> {
+            o.writeInt(stats.size());
+            for (Map.Entry<String, String> e : stats.entrySet()) {
+                o.writeUTF(e.getKey());
+                o.writeUTF(e.getValue());
+            }
+        });
+    }
+
+    // Αν η σύνδεση έκλεισε, δεν έχει νόημα να σταματήσει το stream εδώ, απλά δεν στέλνουμε τίποτα
+    private void send(int requestId, byte type, byte[] payload) {
+        try {
+            Frame.write(out, requestId, type, payload);
+        } catch (IOException e) {
+            logger.debug("Could not send frame " + type + " for request " + requestId + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] utf(String value) {
+        try {
+            return Frame.payload(o -> o.writeUTF(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class FrameControl implements StreamSession.Control {
+        private final int id;
+
+        FrameControl(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void notFound() {
+            send(id, Frame.NOT_FOUND, Frame.EMPTY);
+        }
+
+        @Override
+        public void busy(long retryAfterMs) {
+            send(id, Frame.BUSY, ByteBuffer.allocate(4).putInt((int) retryAfterMs).array());
+        }
+
+        @Override
+        public void streaming(String playlistUrl) {
+            send(id, Frame.STREAMING, playlistUrl == null ? Frame.EMPTY : utf(playlistUrl));
+        }
+
+        @Override
+        public void sdp(String sdp) {
+            send(id, Frame.SDP, utf(sdp));
+        }
+
+        @Override
+        public void ready() {
+            send(id, Frame.READY, Frame.EMPTY);
+        }
+
+        @Override
+        public void firstPacket() {
+            send(id, Frame.FIRST_PACKET, Frame.EMPTY);
+        }
+
+        // Εδώ ένα αποτυχημένο write σταματάει το stream, σε αντίθεση με το send()
+        @Override
+        public void media(byte[] buffer, int length) throws IOException {
+            Frame.write(out, id, Frame.MEDIA, buffer, length);
+        }
+
+        @Override
+        public boolean awaitClientReady(int timeoutMs) throws InterruptedException {
+            CompletableFuture<Boolean> ready = clientReady.get(id);
+            try {
+                return ready != null && ready.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void watch(SessionRegistry.Session session) {
+            streams.put(id, session);
+            if (keepalives) session.alive();
+            if (cancelled.contains(id)) session.end(SessionRegistry.CANCEL);
+            if (disconnected) session.end(SessionRegistry.EOF);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package server;
+
+import shared.Constants;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Ο τρέχων κατάλογος του server. Οι readers παίρνουν ένα immutable CatalogIndex χωρίς locks,
+// οι αλλαγές δημοσιεύονται με atomic swap ολόκληρου του index.
+public class Catalog {
+    private static final AtomicReference<CatalogIndex> current = new AtomicReference<>(new CatalogIndex(List.of()));
+
+    public static CatalogIndex get() {
+        return current.get();
+    }
+
+    public static void publish(CatalogIndex index) {
+        current.set(index);
+    }
+
+    public static void update(Collection<Rendition> added, Collection<Rendition> removed) {
+        current.updateAndGet(index -> index.withChanges(added, removed));
+    }
+
+    // Νέες μετρήσεις στο MediaIndex: ίδιος κατάλογος, νέα bitrates στις απαντήσεις του LIST
+    public static void refresh() {
+        current.updateAndGet(CatalogIndex::withCurrentBitrates);
+    }
+
+    public static void add(Rendition rendition) {
+        update(List.of(rendition), List.of());
+    }
+
+    // Ένα πλήρες directory scan, στην εκκίνηση ή όταν χαθούν events του watcher
+    public static CatalogIndex scan() {
+        List<Rendition> renditions = new ArrayList<>();
+        File[] files = new File(Constants.VIDEO_DIR).listFiles();
+        if (files != null) {
+            for (File f : files) {
+                Rendition r = Rendition.parse(f.getName());
+                if (r != null && f.isFile()) renditions.add(r);
+            }
+        }
+        return new CatalogIndex(renditions);
+    }
+}
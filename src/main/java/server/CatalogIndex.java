@@ -0,0 +1,214 @@
+package server;
+
+import shared.Constants;
+import shared.Frame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Immutable στιγμιότυπο του καταλόγου: movie -> format -> resolutions, με το bitrate κάθε rendition
+// (μετρημένο από το MediaIndex ή το ονομαστικό του resolution). Ένα LIST επιστρέφει όσα renditions του
+// format έχουν bitrate ως την ταχύτητα του client. Οι απαντήσεις φτιάχνονται μία φορά ανά (format, κατώφλι)
+// την πρώτη φορά που ζητηθούν, οπότε ένα LIST δεν κάνει ούτε filesystem calls ούτε parsing ονομάτων.
+public final class CatalogIndex {
+    // Ονομαστική ταχύτητα (Mbps) ανά resolution, με τη σειρά του Constants.RESOLUTIONS
+    private static final double[] MIN_SPEED = {
+            Constants.BITRATE_240P, Constants.BITRATE_360P, Constants.BITRATE_480P,
+            Constants.BITRATE_720P, Constants.BITRATE_1080P
+    };
+    private static final String EMPTY_LISTING = "0" + System.lineSeparator();
+    private static final byte[] EMPTY_BINARY_LISTING = {0, 0, 0, 0};
+
+    private final Map<String, Map<String, SortedSet<String>>> movies;
+    private final Set<Rendition> renditions;
+    private final Map<Rendition, Double> bitrates;
+    private final Map<String, Listings> listings = new HashMap<>();
+
+    // Οι απαντήσεις ενός format. Κατώφλια είναι τα διαφορετικά bitrates του format σε αύξουσα σειρά:
+    // η απάντηση i έχει όσα renditions έχουν bitrate <= levels[i - 1] (η 0 κανένα).
+    private record Entry(String movie, String resolution, double mbps) {
+        int kbps() {
+            return (int) Math.round(mbps * 1000);
+        }
+    }
+
+    private static final class Listings {
+        final List<Entry> entries; // με τη σειρά του LIST
+        final double[] levels;
+        final AtomicReferenceArray<String> text;
+        final AtomicReferenceArray<byte[]> binary;
+
+        Listings(List<Entry> entries) {
+            this.entries = entries;
+            this.levels = entries.stream().mapToDouble(Entry::mbps).distinct().sorted().toArray();
+            this.text = new AtomicReferenceArray<>(levels.length + 1);
+            this.binary = new AtomicReferenceArray<>(levels.length + 1);
+        }
+
+        // Πόσα κατώφλια χωράει η ταχύτητα
+        int level(double speed) {
+            int i = Arrays.binarySearch(levels, speed);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        String text(double speed) {
+            int level = level(speed);
+            String listing = text.get(level);
+            if (listing == null) {
+                listing = textListing(allowed(level));
+                text.set(level, listing);
+            }
+            return listing;
+        }
+
+        byte[] binary(double speed) {
+            int level = level(speed);
+            byte[] listing = binary.get(level);
+            if (listing == null) {
+                listing = binaryListing(allowed(level));
+                binary.set(level, listing);
+            }
+            return listing;
+        }
+
+        private List<Entry> allowed(int level) {
+            if (level == 0) return List.of();
+            double max = levels[level - 1];
+            List<Entry> allowed = new ArrayList<>();
+            for (Entry e : entries) {
+                if (e.mbps() <= max) allowed.add(e);
+            }
+            return allowed;
+        }
+    }
+
+    public CatalogIndex(Collection<Rendition> renditions) {
+        this(renditions, Map.of());
+    }
+
+    // known: bitrates από το προηγούμενο index για renditions που δεν άλλαξαν, τα υπόλοιπα από το MediaIndex
+    private CatalogIndex(Collection<Rendition> renditions, Map<Rendition, Double> known) {
+        Comparator<String> byResolution = Comparator.comparingInt(Rendition::resolutionIndex);
+        Map<String, Map<String, SortedSet<String>>> byMovie = new TreeMap<>();
+        Map<Rendition, Double> rates = new HashMap<>();
+        for (Rendition r : renditions) {
+            byMovie.computeIfAbsent(r.movie(), k -> new TreeMap<>())
+                    .computeIfAbsent(r.format(), k -> new TreeSet<>(byResolution))
+                    .add(r.resolution());
+            Double mbps = known.get(r);
+            rates.put(r, mbps != null ? mbps : MediaIndex.mbps(r));
+        }
+        for (Map.Entry<String, Map<String, SortedSet<String>>> e : byMovie.entrySet()) {
+            Map<String, SortedSet<String>> formats = e.getValue();
+            formats.replaceAll((fmt, res) -> Collections.unmodifiableSortedSet(res));
+            e.setValue(Collections.unmodifiableMap(formats));
+        }
+        this.movies = Collections.unmodifiableMap(byMovie);
+        this.renditions = Set.copyOf(renditions);
+        this.bitrates = Collections.unmodifiableMap(rates);
+
+        for (String format : Constants.FORMATS) {
+            List<Entry> entries = new ArrayList<>();
+            for (Map.Entry<String, Map<String, SortedSet<String>>> e : movies.entrySet()) {
+                SortedSet<String> resolutions = e.getValue().get(format);
+                if (resolutions == null) continue;
+                for (String res : resolutions) {
+                    entries.add(new Entry(e.getKey(), res, bitrates.get(new Rendition(e.getKey(), res, format))));
+                }
+            }
+            listings.put(format, new Listings(entries));
+        }
+    }
+
+    // count και μετά μια γραμμή movie,resolution,kbps
+    private static String textListing(List<Entry> entries) {
+        StringBuilder lines = new StringBuilder();
+        lines.append(entries.size()).append(System.lineSeparator());
+        for (Entry entry : entries) {
+            lines.append(entry.movie()).append(',').append(entry.resolution()).append(',').append(entry.kbps())
+                    .append(System.lineSeparator());
+        }
+        return lines.toString();
+    }
+
+    private static byte[] binaryListing(List<Entry> entries) {
+        try {
+            return Frame.payload(out -> {
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.movie());
+                    out.writeUTF(entry.resolution());
+                    out.writeInt(entry.kbps());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Ονομαστικό bitrate (Mbps) ενός resolution, όταν δεν υπάρχει μέτρηση
+    static double bitrate(String resolution) {
+        int idx = Rendition.resolutionIndex(resolution);
+        return idx == -1 ? 0 : MIN_SPEED[idx];
+    }
+
+    // Bitrate (Mbps) ενός rendition του καταλόγου, μετρημένο όπου υπάρχει
+    double bitrate(Rendition rendition) {
+        Double mbps = bitrates.get(rendition);
+        return mbps != null ? mbps : MediaIndex.mbps(rendition);
+    }
+
+    // Η απάντηση του LIST: count και μετά μια γραμμή movie,resolution,kbps ανά βίντεο
+    public String listing(String format, double speed) {
+        Listings l = listings.get(format);
+        return l == null ? EMPTY_LISTING : l.text(speed);
+    }
+
+    // Το ίδιο για το binary protocol, έτοιμο payload του Frame.LISTING
+    public byte[] binaryListing(String format, double speed) {
+        Listings l = listings.get(format);
+        return l == null ? EMPTY_BINARY_LISTING : l.binary(speed);
+    }
+
+    // Ίδιοι renditions με τα τρέχοντα bitrates του MediaIndex (μετά από νέες μετρήσεις)
+    public CatalogIndex withCurrentBitrates() {
+        return new CatalogIndex(renditions);
+    }
+
+    // Νέο index με τις αλλαγές εφαρμοσμένες, το τρέχον μένει ανέπαφο
+    public CatalogIndex withChanges(Collection<Rendition> added, Collection<Rendition> removed) {
+        Set<Rendition> next = new HashSet<>(renditions);
+        next.removeAll(removed);
+        next.addAll(added);
+        if (next.equals(renditions)) return this;
+        Map<Rendition, Double> known = new HashMap<>(bitrates);
+        known.keySet().removeAll(added); // ένα αρχείο που ξαναγράφτηκε μπορεί να έχει άλλο bitrate
+        return new CatalogIndex(next, known);
+    }
+
+    public boolean contains(Rendition rendition) {
+        return renditions.contains(rendition);
+    }
+
+    public Set<Rendition> renditions() {
+        return renditions;
+    }
+
+    public Set<Rendition> renditionsOf(String movie) {
+        Map<String, SortedSet<String>> formats = movies.get(movie);
+        if (formats == null) return Set.of();
+        Set<Rendition> result = new HashSet<>();
+        formats.forEach((fmt, resolutions) -> resolutions.forEach(res -> result.add(new Rendition(movie, res, fmt))));
+        return result;
+    }
+
+    public Set<String> movies() {
+        return movies.keySet();
+    }
+
+    public int size() {
+        return renditions.size();
+    }
+}
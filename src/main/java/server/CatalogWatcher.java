@@ -0,0 +1,95 @@
+package server;
+
+import shared.Constants;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Παρακολουθεί το VIDEO_DIR και ενημερώνει τον κατάλογο σταδιακά, χωρίς restart.
+// Για κάθε νέο/αλλαγμένο τίτλο βάζει στην ουρά μόνο τα renditions που λείπουν.
+public class CatalogWatcher implements Runnable {
+    private static final Logger logger = LogManager.getLogger(CatalogWatcher.class);
+    // Ένα αρχείο θεωρείται έτοιμο όταν δεν έχει αλλάξει για τόσο (αντιγραφές σε εξέλιξη)
+    private static final long SETTLE_MS = Long.parseLong(System.getProperty("catalog.settleMs", "2000"));
+
+    private final Path dir = Paths.get(Constants.VIDEO_DIR);
+    private final Map<String, Long> changed = new HashMap<>();
+
+    public static void start() {
+        Thread t = new Thread(new CatalogWatcher(), "catalog-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            logger.info("Watching {} for new videos", dir.toAbsolutePath());
+            while (true) {
+                WatchKey key = watcher.poll(500, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            logger.warn("Watch events overflowed, rescanning {}", Constants.VIDEO_DIR);
+                            Catalog.publish(Catalog.scan());
+                            MediaIndex.refresh(Catalog.get().renditions());
+                            queueMissing(Catalog.get().movies());
+                            continue;
+                        }
+                        String name = event.context().toString();
+                        if (Rendition.parse(name) != null) changed.put(name, System.currentTimeMillis());
+                    }
+                    if (!key.reset()) {
+                        logger.error("Video directory {} is no longer accessible", dir);
+                        return;
+                    }
+                }
+                applySettled();
+            }
+        } catch (IOException e) {
+            logger.error("Catalog watcher failed: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applySettled() {
+        long now = System.currentTimeMillis();
+        List<Rendition> added = new ArrayList<>();
+        List<Rendition> removed = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = changed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (now - e.getValue() < SETTLE_MS) continue;
+            it.remove();
+            Rendition r = Rendition.parse(e.getKey());
+            if (Files.isRegularFile(dir.resolve(e.getKey()))) added.add(r);
+            else removed.add(r);
+        }
+        if (added.isEmpty() && removed.isEmpty()) return;
+
+        Catalog.update(added, removed);
+        logger.info("Catalog updated: +{} -{} ({} videos)", added.size(), removed.size(), Catalog.get().size());
+        MediaIndex.refresh(added);
+        Set<String> movies = new HashSet<>();
+        for (Rendition r : added) movies.add(r.movie());
+        queueMissing(movies);
+        // Ο τίτλος αφαιρέθηκε εντελώς: δεν έχει νόημα να συνεχίσουμε τα transcodes του
+        for (Rendition r : removed) {
+            if (Catalog.get().renditionsOf(r.movie()).isEmpty()) VideoGenerator.cancel(r.movie());
+        }
+    }
+
+    private static void queueMissing(Collection<String> movies) {
+        for (String movie : movies) {
+            int queued = VideoGenerator.queueMissing(movie).size();
+            if (queued > 0) logger.info("Queued {} missing renditions of {}", queued, movie);
+        }
+    }
+}
@@ -4,20 +4,56 @@ import shared.*;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import javax.net.ssl.SSLSocket;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class ClientHandler implements Runnable {
     private static final Logger logger = LogManager.getLogger(ClientHandler.class);
+    static final HandshakeStats TLS_HANDSHAKES = new HandshakeStats();
+    private static final LatencyHistogram LIST_LATENCY =
+            Metrics.histogram(Metrics.name("server_list_micros", "protocol", "text"));
     private final Socket clientSocket;
+    private final InputStream raw;
 
-    public ClientHandler(Socket socket) {
+    // Το TLS handshake έχει γίνει και το raw έχει το πρώτο byte του αιτήματος (Admission.awaitRequest)
+    public ClientHandler(Socket socket, InputStream raw) {
         this.clientSocket = socket;
+        this.raw = raw;
     }
 
     @Override
     public void run() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        try {
+            // Binary ή text protocol, από το πρώτο byte της σύνδεσης
+            raw.mark(1);
+            if (raw.read() == Frame.MAGIC) {
+                new BinarySession(clientSocket, raw).run();
+                return;
+            }
+            raw.reset();
+            handleText(raw);
+        } catch (Exception e) {
+            logger.warn("ClientHandler exception: " + e.getMessage());
+        } finally {
+            try { clientSocket.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    // Ρητό handshake για να μετράμε πόσο κρατάει και αν έγινε resumption
+    static void handshake(SSLSocket ssl) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        ssl.startHandshake();
+        long nanos = System.nanoTime() - start;
+        boolean resumed = HandshakeStats.isResumed(ssl.getSession(), startMillis);
+        logger.debug("TLS handshake with " + ssl.getInetAddress() + " in " + nanos / 1_000_000 + " ms"
+                + (resumed ? " (resumed)" : ""));
+        if (TLS_HANDSHAKES.record(nanos, resumed) % 100 == 0) logger.info(TLS_HANDSHAKES.summary());
+    }
+
+    private void handleText(InputStream raw) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(raw));
              PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
 
             String command = in.readLine();
@@ -27,11 +63,19 @@ public class ClientHandler implements Runnable {
                 handleListRequest(in, out);
             } else if (Protocol.STREAM.equals(command)) {
                 handleStreamRequest(in, out);
+            } else if (Protocol.SAVE.equals(command)) {
+                handleSaveRequest(in, out);
+            } else if (Protocol.HEALTH.equals(command)) {
+                // Readiness για τον load balancer. BUSY όταν δεν χωράει άλλο live encode.
+                if (!ServerMain.isReady()) {
+                    out.println(Protocol.STARTING);
+                } else if (Admission.encodesFull()) {
+                    out.println(Protocol.BUSY);
+                    out.println(Admission.retryAfterMs());
+                } else {
+                    out.println(Protocol.UP);
+                }
             }
-        } catch (Exception e) {
-            logger.warn("ClientHandler exception: " + e.getMessage());
-        } finally {
-            try { clientSocket.close(); } catch (Exception ignored) {}
         }
     }
 
@@ -40,42 +84,42 @@ public class ClientHandler implements Runnable {
         String format = in.readLine();
         logger.info("Client speed: " + clientSpeed + " Mbps, preferred format: " + format);
 
-        File videoDir = new File(Constants.VIDEO_DIR);
-        File[] files = videoDir.listFiles();
-        Map<String, List<String>> available = new HashMap<>();
-
-        for (File f : files) {
-            String name = f.getName();
-            if (!name.endsWith("." + format)) continue;
-            int dashIdx = name.lastIndexOf('-');
-            int dotIdx = name.lastIndexOf('.');
-            if (dashIdx == -1 || dotIdx == -1) continue;
-            String movie = name.substring(0, dashIdx);
-            String resolution = name.substring(dashIdx + 1, dotIdx);
-            if (!isAllowed(resolution, clientSpeed)) continue;
-            available.computeIfAbsent(movie, k -> new ArrayList<>()).add(resolution);
-        }
-
-        // Αποστολή απάντησης: count, then movie,resolution
-        int count = 0;
-        for (List<String> resList : available.values()) count += resList.size();
-        out.println(count);
-        for (Map.Entry<String, List<String>> entry : available.entrySet()) {
-            for (String res : entry.getValue()) {
-                out.println(entry.getKey() + "," + res);
-            }
-        }
+        // Αποστολή απάντησης: count, then movie,resolution (έτοιμη από το catalog index)
+        long start = System.nanoTime();
+        out.print(Catalog.get().listing(format, clientSpeed));
+        out.flush();
+        LIST_LATENCY.record((System.nanoTime() - start) / 1000);
     }
 
-    private boolean isAllowed(String res, double speed) {
-        return switch (res) {
-            case "240p" -> speed >= Constants.BITRATE_240P;
-            case "360p" -> speed >= Constants.BITRATE_360P;
-            case "480p" -> speed >= Constants.BITRATE_480P;
-            case "720p" -> speed >= Constants.BITRATE_720P;
-            case "1080p" -> speed >= Constants.BITRATE_1080P;
-            default -> false;
-        };
+    // SAVE: movie, resolution, format, offset -> SAVING, μέγεθος, sha256 και τα bytes από το offset.
+    // Με offset > 0 ο client συνεχίζει ένα download που κόπηκε.
+    private void handleSaveRequest(BufferedReader in, PrintWriter out) throws IOException {
+        String movie = in.readLine();
+        String resolution = in.readLine();
+        String format = in.readLine();
+        String offsetStr = in.readLine();
+        long offset = offsetStr != null && !offsetStr.isBlank() ? Long.parseLong(offsetStr.trim()) : 0;
+
+        Rendition rendition = new Rendition(movie, resolution, format);
+        File file = rendition.file();
+        if (!Catalog.get().contains(rendition) || !file.isFile()) {
+            logger.warn("Requested file not found: " + rendition.fileName());
+            out.println(Protocol.NOT_FOUND);
+            return;
+        }
+        VideoGenerator.recordDemand(movie);
+
+        long size = file.length();
+        if (offset < 0 || offset > size) offset = 0; // άλλη έκδοση του αρχείου, από την αρχή
+        out.println(Protocol.SAVING);
+        out.println(size);
+        out.println(offset);
+        out.println(FileDelivery.checksum(file));
+
+        long start = System.currentTimeMillis();
+        long sent = FileDelivery.send(file, offset, clientSocket, clientSocket.getOutputStream());
+        logger.info("Sent " + rendition.fileName() + " (" + sent + " bytes from offset " + offset + ") in "
+                + (System.currentTimeMillis() - start) + " ms");
     }
 
     private void handleStreamRequest(BufferedReader in, PrintWriter out) throws IOException {
@@ -85,65 +129,94 @@ public class ClientHandler implements Runnable {
         String protocol = in.readLine();
         String portStr = in.readLine();
         int port = portStr != null && !portStr.isBlank() ? Integer.parseInt(portStr) : -1;
-        logger.info("Stream request - Movie: " + movie + ", Resolution: " + resolution +
-                ", Format: " + format + ", Protocol: " + protocol + ", Port: " + port);
-
-        String videoPath = Constants.VIDEO_DIR + movie + "-" + resolution + "." + format;
-        logger.info("Request to play: " + videoPath);
-        File file = new File(videoPath);
-        if (!file.exists()) {
-            logger.warn("Requested file not found: " + videoPath);
+        StreamSession.run(movie, resolution, format, protocol, port, clientSocket, new LineControl(in, out));
+    }
+
+    // Οι απαντήσεις του STREAM σαν γραμμές κειμένου
+    private class LineControl implements StreamSession.Control {
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        LineControl(BufferedReader in, PrintWriter out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void notFound() {
             out.println(Protocol.NOT_FOUND);
-            return;
         }
 
+        @Override
+        public void busy(long retryAfterMs) {
+            out.println(Protocol.BUSY);
+            out.println(retryAfterMs);
+        }
+
+        @Override
+        public void streaming(String playlistUrl) {
+            out.println(Protocol.STREAMING);
+            if (playlistUrl != null) out.println(playlistUrl);
+        }
 
-        out.println(Protocol.STREAMING);
+        @Override
+        public void sdp(String sdp) {
+            // Send SDP file to client
+            out.println(Protocol.SDP);
+            out.print(sdp);
+            out.println(Protocol.END_SDP);
+        }
 
-        if (protocol.equalsIgnoreCase("UDP") || protocol.equalsIgnoreCase("RTP")) {
-            try { Thread.sleep(700); } catch (InterruptedException ignored) {}
+        @Override
+        public void ready() {
+            out.println(Protocol.READY);
         }
 
-        if (protocol.equalsIgnoreCase("TCP")) {
-            VideoStreamer.streamViaTCP(videoPath, port);
-        } else if (protocol.equalsIgnoreCase("UDP")) {
-            String clientIP = clientSocket.getInetAddress().getHostAddress();
-            VideoStreamer.streamViaUDP(videoPath, clientIP, port);
-        } else if (protocol.equalsIgnoreCase("RTP")) {
-            String clientIP = clientSocket.getInetAddress().getHostAddress();
-            File sdpFile = File.createTempFile("rtp_", ".sdp");
-
-            // Start ffmpeg to create SDP and stream to client
-            // VideoStreamer.streamViaRTP will call ffmpeg with -sdp_file sdpFile.getAbsolutePath()
-            //VideoStreamer.streamViaRTP(videoPath, clientIP, port, sdpFile.getAbsolutePath());
-            VideoStreamer.streamViaRTP(videoPath, clientIP, Constants.RTP_PORT, sdpFile.getAbsolutePath());
-
-            // Wait for ffmpeg to generate the SDP file
-            int tries = 0;
-            while (!sdpFile.exists() || sdpFile.length() == 0) {
-                try { Thread.sleep(100); } catch (InterruptedException ignored) {}
-                tries++;
-                if (tries > 20) break; // Wait max 2s
-            }
+        @Override
+        public void firstPacket() {
+            out.println(Protocol.FIRST_PACKET);
+        }
 
-            // SDP contents
-            try (BufferedReader sdpIn = new BufferedReader(new FileReader(sdpFile))) {
-                String line;
-                System.out.println("======= SDP GENERATED BY FFMPEG =======");
-                while ((line = sdpIn.readLine()) != null) {
-                    System.out.println(line);
-                }
-                System.out.println("=======================================");
-            }
+        // Μετά το STREAMING η σύνδεση μεταφέρει μόνο τα bytes του stream, μέχρι να κλείσει
+        @Override
+        public void media(byte[] buffer, int length) throws IOException {
+            out.flush();
+            OutputStream raw = clientSocket.getOutputStream();
+            raw.write(buffer, 0, length);
+            raw.flush();
+        }
 
-            // Send SDP file to client
-            out.println("SDP");
-            try (BufferedReader sdpIn = new BufferedReader(new FileReader(sdpFile))) {
-                String line;
-                while ((line = sdpIn.readLine()) != null) out.println(line);
+        @Override
+        public boolean awaitClientReady(int timeoutMs) {
+            try {
+                clientSocket.setSoTimeout(timeoutMs);
+                boolean ready = Protocol.READY.equals(in.readLine());
+                clientSocket.setSoTimeout(0);
+                return ready;
+            } catch (IOException e) {
+                return false;
             }
-            out.println("END_SDP");
         }
 
+        // Η σύνδεση δεν έχει άλλο αίτημα, οπότε ό,τι διαβαστεί εδώ είναι STOP, KEEPALIVE ή το EOF του client
+        @Override
+        public void watch(SessionRegistry.Session session) {
+            ServerMain.handlers().execute(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (Protocol.KEEPALIVE.equals(line)) {
+                            session.alive();
+                        } else if (Protocol.STOP.equals(line)) {
+                            session.end(SessionRegistry.CANCEL);
+                            return;
+                        }
+                    }
+                    session.end(SessionRegistry.EOF);
+                } catch (IOException e) {
+                    session.end(SessionRegistry.EOF); // μετά το τέλος του stream το socket έκλεισε από εμάς, no-op
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,85 @@
+package server;
+
+import shared.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// ffmpeg/ffprobe διεργασίες του server ανά είδος: πόσες τρέχουν, πόσες ξεκίνησαν, exit codes και CPU.
+// Η CPU μιας διεργασίας δεν διαβάζεται μετά το exit, οπότε δειγματοληπτείται κάθε CPU_SAMPLE_MS και
+// στο exit μετράει το τελευταίο δείγμα (λάθος το πολύ ένα διάστημα δειγματοληψίας ανά διεργασία).
+class FfmpegMetrics {
+    static final String STREAM = "stream", PACKAGE = "package", TRANSCODE = "transcode", PROBE = "probe";
+    private static final String[] KINDS = {STREAM, PACKAGE, TRANSCODE, PROBE};
+    private static final long CPU_SAMPLE_MS = Long.getLong("metrics.cpuSampleMs", 1000);
+
+    private static final Metrics.Family<AtomicLong> RUNNING =
+            Metrics.family("server_ffmpeg_processes", "kind", KINDS, Metrics::gauge);
+    private static final Metrics.Family<LongAdder> STARTED =
+            Metrics.family("server_ffmpeg_started_total", "kind", KINDS, Metrics::counter);
+    private static final Metrics.Family<LongAdder> CPU_FINISHED =
+            Metrics.family("finished_cpu", "kind", KINDS, k -> new LongAdder()); // μόνο για το cpu_millis
+    private static final Map<Process, Tracked> live = new ConcurrentHashMap<>();
+
+    private static final class Tracked {
+        final String kind;
+        volatile long cpuMillis; // τελευταίο δείγμα
+
+        Tracked(String kind) {
+            this.kind = kind;
+        }
+    }
+
+    static {
+        for (String kind : KINDS) {
+            Metrics.gauge(Metrics.name("server_ffmpeg_cpu_millis_total", "kind", kind), () -> cpuMillis(kind));
+        }
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ffmpeg-cpu-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(FfmpegMetrics::sample, CPU_SAMPLE_MS, CPU_SAMPLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    static Process track(String kind, Process process) {
+        RUNNING.get(kind).incrementAndGet();
+        STARTED.get(kind).increment();
+        live.put(process, new Tracked(kind));
+        process.onExit().whenComplete((p, e) -> exited(kind, process));
+        return process;
+    }
+
+    private static void exited(String kind, Process process) {
+        RUNNING.get(kind).decrementAndGet();
+        Tracked tracked = live.remove(process);
+        if (tracked != null) CPU_FINISHED.get(kind).add(tracked.cpuMillis);
+        // Τα exit codes δεν είναι γνωστά από πριν, το counter φτιάχνεται εδώ (εκτός hot path)
+        String code = process.isAlive() ? "unknown" : String.valueOf(process.exitValue());
+        Metrics.counter(Metrics.name("server_ffmpeg_exits_total", "kind", kind, "code", code)).increment();
+    }
+
+    private static void sample() {
+        for (Map.Entry<Process, Tracked> e : live.entrySet()) {
+            try {
+                Tracked tracked = e.getValue();
+                e.getKey().toHandle().info().totalCpuDuration().ifPresent(d -> tracked.cpuMillis = d.toMillis());
+            } catch (UnsupportedOperationException ignored) {
+                // StubSource: δεν είναι πραγματική διεργασία του OS
+            }
+        }
+    }
+
+    private static long cpuMillis(String kind) {
+        long total = CPU_FINISHED.get(kind).sum();
+        for (Tracked tracked : live.values()) {
+            if (tracked.kind.equals(kind)) total += tracked.cpuMillis;
+        }
+        return total;
+    }
+}
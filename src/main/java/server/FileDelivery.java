@@ -0,0 +1,94 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Αποστολή ολόκληρων αρχείων (SAVE). Σε plain sockets με FileChannel.transferTo (sendfile στο Linux),
+// σε SSL με μεγάλους buffers από pool, αφού το SSLSocket δέχεται μόνο byte[] μέσω του stream του.
+public class FileDelivery {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(64);
+    // path -> checksum του αρχείου όπως ήταν στο (size, mtime)
+    private static final Map<String, Checksum> checksums = new ConcurrentHashMap<>();
+
+    private record Checksum(long size, long lastModified, String sha256) {}
+
+    // SHA-256 σε hex, υπολογίζεται μία φορά ανά έκδοση του αρχείου
+    public static String checksum(File file) throws IOException {
+        long size = file.length(), lastModified = file.lastModified();
+        Checksum cached = checksums.get(file.getPath());
+        if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+            return cached.sha256();
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = acquire();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            while (ch.read(bb.clear()) > 0) {
+                digest.update(buf, 0, bb.position());
+            }
+        } finally {
+            release(buf);
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        checksums.put(file.getPath(), new Checksum(size, lastModified, sha256));
+        return sha256;
+    }
+
+    // Στέλνει το αρχείο από το offset μέχρι το τέλος, επιστρέφει τα bytes που στάλθηκαν
+    public static long send(File file, long offset, Socket socket, OutputStream out) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            long pos = offset;
+            SocketChannel sc = socket.getChannel();
+            if (sc != null) {
+                while (pos < size) {
+                    long sent = ch.transferTo(pos, size - pos, sc);
+                    if (sent <= 0) break;
+                    pos += sent;
+                }
+                return pos - offset;
+            }
+            byte[] buf = acquire();
+            try {
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                int n;
+                while (pos < size && (n = ch.read(bb.clear(), pos)) > 0) {
+                    out.write(buf, 0, n);
+                    pos += n;
+                }
+                out.flush();
+            } finally {
+                release(buf);
+            }
+            return pos - offset;
+        }
+    }
+
+    private static byte[] acquire() {
+        byte[] buf = buffers.poll();
+        return buf != null ? buf : new byte[BUFFER_SIZE];
+    }
+
+    private static void release(byte[] buf) {
+        buffers.offer(buf);
+    }
+}
@@ -0,0 +1,219 @@
+package server;
+
+import shared.Constants;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Metadata κάθε rendition από το ffprobe (διάρκεια, πραγματικό bitrate, codecs, απόσταση keyframes), μία φορά
+// ανά αρχείο. Κρατιέται στο VIDEO_DIR/.media-index και ισχύει όσο δεν αλλάζουν μέγεθος και mtime του αρχείου.
+// Το LIST φιλτράρει με το πραγματικό bitrate: ένα .avi μπορεί να θέλει πολλαπλάσιο από ένα .mkv στο ίδιο
+// resolution. Ό,τι δεν έχει μετρηθεί ακόμα παίρνει το ονομαστικό bitrate του resolution.
+class MediaIndex {
+    private static final Logger logger = LogManager.getLogger(MediaIndex.class);
+    private static final File FILE = new File(Constants.VIDEO_DIR, ".media-index");
+    private static final String HEADER = "# name\tsize\tmtime\tduration\tbitrate\tvideo\taudio\tkeyframeInterval";
+    // Τα πρώτα τόσα δευτερόλεπτα αρκούν για την απόσταση των keyframes
+    private static final int KEYFRAME_WINDOW_SECONDS = 60;
+
+    record Info(long size, long modified, double duration, long bitRate, String videoCodec, String audioCodec,
+                double keyframeInterval) {
+        double mbps() {
+            return bitRate / 1_000_000.0;
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == modified;
+        }
+    }
+
+    private static final Map<String, Info> entries = new ConcurrentHashMap<>();
+    // Αρχεία που το ffprobe δεν διάβασε, με το mtime τους: δεν ξαναδοκιμάζουμε μέχρι να αλλάξουν
+    private static final Map<String, Long> failed = new ConcurrentHashMap<>();
+    private static volatile boolean warned;
+    private static final ExecutorService prober = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "media-probe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static void load() {
+        if (!FILE.isFile()) return;
+        try (BufferedReader in = Files.newBufferedReader(FILE.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.isBlank()) continue;
+                String[] f = line.split("\t", -1);
+                if (f.length < 8) continue;
+                try {
+                    entries.put(f[0], new Info(Long.parseLong(f[1]), Long.parseLong(f[2]), Double.parseDouble(f[3]),
+                            Long.parseLong(f[4]), f[5], f[6], Double.parseDouble(f[7])));
+                } catch (NumberFormatException e) {
+                    logger.debug("Skipping bad media index line: " + line);
+                }
+            }
+            logger.info("Media index loaded: " + entries.size() + " renditions");
+        } catch (IOException e) {
+            logger.warn("Could not read media index " + FILE + ": " + e.getMessage());
+        }
+    }
+
+    // Το metadata του αρχείου όπως είναι τώρα, null αν δεν έχει μετρηθεί ή άλλαξε από τότε
+    static Info get(Rendition rendition) {
+        Info info = entries.get(rendition.fileName());
+        return info != null && info.matches(rendition.file()) ? info : null;
+    }
+
+    // Πραγματικό bitrate σε Mbps, ή το ονομαστικό του resolution όσο δεν είναι γνωστό
+    static double mbps(Rendition rendition) {
+        Info info = get(rendition);
+        return info != null && info.bitRate() > 0 ? info.mbps() : CatalogIndex.bitrate(rendition.resolution());
+    }
+
+    // Διάρκεια από το index, ή με ffprobe για αρχεία εκτός καταλόγου
+    static double duration(File file) {
+        Rendition rendition = Rendition.parse(file.getName());
+        Info info = rendition != null ? get(rendition) : null;
+        return info != null && info.duration() > 0 ? info.duration() : VideoGenerator.probeDuration(file);
+    }
+
+    // Μετράει στο παρασκήνιο όσα renditions λείπουν ή άλλαξαν. Ο κατάλογος ξαναχτίζεται στο τέλος κάθε
+    // ομάδας, ώστε το LIST να δει τα νέα bitrates.
+    static void refresh(Collection<Rendition> renditions) {
+        List<Rendition> stale = new ArrayList<>();
+        for (Rendition r : renditions) {
+            File file = r.file();
+            if (get(r) == null && !Objects.equals(failed.get(r.fileName()), file.lastModified())) stale.add(r);
+        }
+        if (stale.isEmpty()) return;
+        prober.execute(() -> {
+            int probed = 0;
+            for (Rendition r : stale) {
+                if (get(r) != null || !r.file().isFile()) continue;
+                Info info = probe(r.file());
+                if (info == null) {
+                    failed.put(r.fileName(), r.file().lastModified());
+                    continue;
+                }
+                entries.put(r.fileName(), info);
+                failed.remove(r.fileName());
+                probed++;
+            }
+            if (probed == 0) return;
+            logger.info("Probed " + probed + " renditions");
+            Catalog.refresh();
+            save();
+        });
+    }
+
+    private static Info probe(File file) {
+        long size = file.length(), modified = file.lastModified();
+        Map<String, String> format = new HashMap<>();
+        String video = "", audio = "";
+        List<String> lines = ffprobe(file, "-show_entries", "format=duration,bit_rate:stream=codec_type,codec_name",
+                "-of", "default=noprint_wrappers=1");
+        if (lines == null) return null;
+        String codec = null, type = null;
+        for (String line : lines) {
+            int eq = line.indexOf('=');
+            if (eq < 0) continue;
+            String key = line.substring(0, eq), value = line.substring(eq + 1).trim();
+            switch (key) {
+                case "codec_name" -> codec = value;
+                case "codec_type" -> type = value;
+                default -> format.put(key, value);
+            }
+            if (codec != null && type != null) {
+                if (type.equals("video") && video.isEmpty()) video = codec;
+                if (type.equals("audio") && audio.isEmpty()) audio = codec;
+                codec = type = null;
+            }
+        }
+        double duration = parseDouble(format.get("duration"));
+        long bitRate = (long) parseDouble(format.get("bit_rate"));
+        if (bitRate <= 0 && duration > 0) bitRate = (long) (size * 8 / duration);
+        if (duration <= 0 && bitRate <= 0) return null;
+        return new Info(size, modified, duration, bitRate, video, audio, keyframeInterval(file));
+    }
+
+    // Μέση απόσταση (s) των keyframes του πρώτου video stream στο αρχικό παράθυρο, 0 αν δεν βγαίνει
+    private static double keyframeInterval(File file) {
+        List<String> lines = ffprobe(file, "-select_streams", "v:0", "-read_intervals", "%+" + KEYFRAME_WINDOW_SECONDS,
+                "-show_entries", "packet=pts_time,flags", "-of", "csv=p=0");
+        if (lines == null) return 0;
+        double first = -1, last = -1;
+        int keyframes = 0;
+        for (String line : lines) {
+            String[] f = line.split(",");
+            if (f.length < 2 || !f[1].startsWith("K")) continue;
+            double pts = parseDouble(f[0]);
+            if (pts < 0) continue;
+            if (first < 0) first = pts;
+            last = pts;
+            keyframes++;
+        }
+        return keyframes > 1 ? (last - first) / (keyframes - 1) : 0;
+    }
+
+    private static List<String> ffprobe(File file, String... args) {
+        List<String> command = new ArrayList<>(List.of(Constants.FFPROBE_PATH, "-v", "error"));
+        command.addAll(List.of(args));
+        command.add(file.getAbsolutePath());
+        try {
+            Process p = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            FfmpegMetrics.track(FfmpegMetrics.PROBE, p);
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = r.readLine()) != null) lines.add(line);
+            }
+            return p.waitFor() == 0 ? lines : null;
+        } catch (IOException e) {
+            // Χωρίς ffprobe αποτυγχάνουν όλα, μία προειδοποίηση αρκεί
+            if (!warned) logger.warn("Could not probe " + file.getName() + ": " + e.getMessage());
+            warned = true;
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null) return -1;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return -1; // "N/A"
+        }
+    }
+
+    // Ολόκληρο το index σε προσωρινό αρχείο και rename, ώστε ένα crash να μην αφήνει μισό αρχείο
+    private static void save() {
+        File tmp = new File(FILE.getParentFile(), FILE.getName() + ".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            for (Map.Entry<String, Info> e : new TreeMap<>(entries).entrySet()) {
+                Info i = e.getValue();
+                out.println(e.getKey() + "\t" + i.size() + "\t" + i.modified() + "\t" + i.duration() + "\t" + i.bitRate()
+                        + "\t" + i.videoCodec() + "\t" + i.audioCodec() + "\t" + i.keyframeInterval());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write media index: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not replace media index: " + e.getMessage());
+        }
+    }
+}
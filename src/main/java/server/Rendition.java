@@ -0,0 +1,39 @@
+package server;
+
+import shared.Constants;
+
+import java.io.File;
+import java.util.Arrays;
+
+// Ένα αρχείο βίντεο του καταλόγου: <movie>-<resolution>.<format>
+public record Rendition(String movie, String resolution, String format) {
+
+    // null για αρχεία που δεν ακολουθούν το σχήμα ονομασίας ή είναι κρυφά/προσωρινά (".name")
+    public static Rendition parse(String fileName) {
+        if (fileName.startsWith(".")) return null;
+        int dotIdx = fileName.lastIndexOf('.');
+        if (dotIdx == -1) return null;
+        int dashIdx = fileName.lastIndexOf('-', dotIdx);
+        if (dashIdx <= 0) return null;
+        String resolution = fileName.substring(dashIdx + 1, dotIdx);
+        String format = fileName.substring(dotIdx + 1);
+        if (resolutionIndex(resolution) == -1 || !Arrays.asList(Constants.FORMATS).contains(format)) return null;
+        return new Rendition(fileName.substring(0, dashIdx), resolution, format);
+    }
+
+    public static int resolutionIndex(String resolution) {
+        return Arrays.asList(Constants.RESOLUTIONS).indexOf(resolution);
+    }
+
+    public int resolutionIndex() {
+        return resolutionIndex(resolution);
+    }
+
+    public String fileName() {
+        return movie + "-" + resolution + "." + format;
+    }
+
+    public File file() {
+        return new File(Constants.VIDEO_DIR, fileName());
+    }
+}
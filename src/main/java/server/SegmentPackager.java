@@ -0,0 +1,99 @@
+package server;
+
+import shared.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Κόβει κάθε rendition μία φορά σε MPEG-TS segments (HLS playlist + seg*.ts) με -c copy.
+// Μετά οι viewers εξυπηρετούνται από τον δίσκο χωρίς ffmpeg ανά viewer.
+// Τα segments μένουν στο videos/.segments/<file>/ και ξαναγίνονται μόνο αν αλλάξει το αρχείο.
+public class SegmentPackager {
+    private static final Logger logger = LogManager.getLogger(SegmentPackager.class);
+    public static final String PLAYLIST = "index.m3u8";
+    public static final int SEGMENT_SECONDS = 4;
+
+    private static final File ROOT = new File(Constants.VIDEO_DIR, ".segments");
+    private static final Map<Rendition, CompletableFuture<File>> packaging = new ConcurrentHashMap<>();
+    // Το remux είναι κυρίως I/O, λίγα threads αρκούν
+    private static final ExecutorService pool = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "segmenter-" + r.hashCode());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static File directory(Rendition rendition) {
+        return new File(ROOT, rendition.fileName());
+    }
+
+    // Ο φάκελος με τα segments, πακεταρισμένος αν χρειάζεται. Ταυτόχρονα αιτήματα για το ίδιο
+    // rendition περιμένουν το ίδιο ffmpeg.
+    public static CompletableFuture<File> ensurePackaged(Rendition rendition) {
+        File dir = directory(rendition);
+        if (isFresh(rendition, dir)) return CompletableFuture.completedFuture(dir);
+        CompletableFuture<File> job = packaging.computeIfAbsent(rendition,
+                r -> CompletableFuture.supplyAsync(() -> pack(r), pool));
+        job.whenComplete((d, e) -> packaging.remove(rendition, job));
+        return job;
+    }
+
+    private static boolean isFresh(Rendition rendition, File dir) {
+        File playlist = new File(dir, PLAYLIST);
+        return playlist.exists() && playlist.lastModified() >= rendition.file().lastModified();
+    }
+
+    private static File pack(Rendition rendition) {
+        File dir = directory(rendition);
+        if (isFresh(rendition, dir)) return dir;
+        File tmp = new File(ROOT, "." + rendition.fileName() + ".tmp");
+        try {
+            deleteRecursively(tmp.toPath());
+            Files.createDirectories(tmp.toPath());
+            long start = System.currentTimeMillis();
+            ProcessBuilder pb = new ProcessBuilder(
+                    Constants.FFMPEG_PATH,
+                    "-hide_banner",
+                    "-loglevel", "error",
+                    "-y",
+                    "-i", rendition.file().getAbsolutePath(),
+                    "-map", "0:v:0",
+                    "-map", "0:a?",
+                    "-c", "copy",
+                    "-f", "hls",
+                    "-hls_time", String.valueOf(SEGMENT_SECONDS),
+                    "-hls_playlist_type", "vod",
+                    "-hls_segment_filename", new File(tmp, "seg%05d.ts").getAbsolutePath(),
+                    new File(tmp, PLAYLIST).getAbsolutePath());
+            pb.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            int exit = FfmpegMetrics.track(FfmpegMetrics.PACKAGE, pb.start()).waitFor();
+            if (exit != 0) {
+                throw new CompletionException(new IOException("ffmpeg exited " + exit + " while packaging " + rendition.fileName()));
+            }
+            deleteRecursively(dir.toPath());
+            Files.move(tmp.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Packaged {} in {} ms", rendition.fileName(), System.currentTimeMillis() - start);
+            return dir;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
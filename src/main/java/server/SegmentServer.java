@@ -0,0 +1,196 @@
+package server;
+
+import com.sun.net.httpserver.*;
+import shared.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// HTTP(S) delivery των segments: GET /hls/<movie-res.format>/index.m3u8 και /hls/<...>/segNNNNN.ts,
+// με υποστήριξη Range. Το HttpServer δίνει μόνο OutputStream, οπότε τα αρχεία περνάνε από ένα buffer CHUNK
+// ανά αίτημα (όχι zero-copy), από σταθερό pool threads ώστε τα segment fetches να μην ανοίγουν απεριόριστα.
+// Το /hls/<movie.format>/master.m3u8 απαριθμεί τα renditions ενός τίτλου για τον ABR client.
+public class SegmentServer {
+    private static final Logger logger = LogManager.getLogger(SegmentServer.class);
+    public static final String PREFIX = "/hls/";
+    public static final String MASTER = "master.m3u8";
+    private static final int THREADS = Integer.getInteger("server.segmentThreads",
+            Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+    private static final int CHUNK = 64 * 1024;
+
+    public static void start(SSLContext sslContext) throws IOException {
+        InetSocketAddress addr = new InetSocketAddress(Constants.SEGMENT_HTTP_PORT);
+        HttpServer server;
+        if (sslContext != null) {
+            HttpsServer https = HttpsServer.create(addr, 1024);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = https;
+        } else {
+            server = HttpServer.create(addr, 1024);
+        }
+        server.createContext(PREFIX, SegmentServer::handle);
+        AtomicInteger threads = new AtomicInteger();
+        server.setExecutor(Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "segment-http-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        logger.info("Segment server is running on port " + Constants.SEGMENT_HTTP_PORT + (sslContext != null ? " (SSL)" : ""));
+    }
+
+    // Το URL του playlist όπως το βλέπει ο client που μας βρήκε στη διεύθυνση host
+    public static String playlistUrl(String host, Rendition rendition) {
+        return (Constants.USE_SSL ? "https://" : "http://") + host + ":" + Constants.SEGMENT_HTTP_PORT
+                + PREFIX + rendition.fileName() + "/" + SegmentPackager.PLAYLIST;
+    }
+
+    // Το master playlist ενός τίτλου σε ένα format
+    public static String masterUrl(String host, String movie, String format) {
+        return (Constants.USE_SSL ? "https://" : "http://") + host + ":" + Constants.SEGMENT_HTTP_PORT
+                + PREFIX + movie + "." + format + "/" + MASTER;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // /hls/<rendition>/<file>, χωρίς υποφακέλους ώστε να μη βγαίνουμε έξω από το .segments
+            String[] parts = exchange.getRequestURI().getPath().substring(PREFIX.length()).split("/");
+            if (parts.length == 2 && parts[1].equals(MASTER)) {
+                sendMaster(exchange, parts[0]);
+                return;
+            }
+            Rendition rendition = parts.length == 2 ? Rendition.parse(parts[0]) : null;
+            if (rendition == null || !Catalog.get().contains(rendition) || !isSegmentName(parts[1])) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            File dir;
+            try {
+                dir = SegmentPackager.ensurePackaged(rendition).get();
+            } catch (ExecutionException e) {
+                logger.warn("Packaging {} failed: {}", rendition.fileName(), e.getCause().toString());
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            File file = new File(dir, parts[1]);
+            if (!file.isFile()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            sendFile(exchange, file, parts[1].endsWith(".m3u8")
+                    ? "application/vnd.apple.mpegurl" : "video/mp2t");
+        }
+    }
+
+    // Ένα variant ανά resolution, με BANDWIDTH το μετρημένο bitrate του rendition. Τα URIs είναι σχετικά,
+    // οπότε ισχύουν και πίσω από τον load balancer.
+    private static void sendMaster(HttpExchange exchange, String title) throws IOException {
+        int dotIdx = title.lastIndexOf('.');
+        List<Rendition> variants = new ArrayList<>();
+        if (dotIdx > 0) {
+            String format = title.substring(dotIdx + 1);
+            for (Rendition r : Catalog.get().renditionsOf(title.substring(0, dotIdx))) {
+                if (r.format().equals(format)) variants.add(r);
+            }
+        }
+        if (variants.isEmpty()) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        variants.sort(Comparator.comparingInt(Rendition::resolutionIndex));
+        CatalogIndex catalog = Catalog.get();
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (Rendition r : variants) {
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=")
+                    .append(Math.round(catalog.bitrate(r) * 1_000_000)).append('\n')
+                    .append("../").append(r.fileName()).append('/').append(SegmentPackager.PLAYLIST).append('\n');
+        }
+        byte[] body = playlist.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.apple.mpegurl");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static boolean isSegmentName(String name) {
+        return name.equals(SegmentPackager.PLAYLIST) || name.matches("seg\\d+\\.ts");
+    }
+
+    private static void sendFile(HttpExchange exchange, File file, String contentType) throws IOException {
+        long length = file.length();
+        long start = 0, end = length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring(6).split("-", 2);
+            try {
+                if (bounds[0].isEmpty()) { // bytes=-N: τα τελευταία N bytes
+                    start = Math.max(0, length - Long.parseLong(bounds[1]));
+                } else {
+                    start = Long.parseLong(bounds[0]);
+                    if (bounds.length > 1 && !bounds[1].isEmpty()) end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+            } catch (NumberFormatException e) {
+                start = length; // άκυρο range -> 416
+            }
+            if (start >= length || start > end) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", contentType);
+        headers.set("Accept-Ranges", "bytes");
+        long count = end - start + 1;
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            headers.set("Content-Length", String.valueOf(count));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             OutputStream body = exchange.getResponseBody()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK, Math.max(1, count)));
+            long pos = start;
+            while (pos <= end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - pos + 1));
+                int n = ch.read(buffer, pos);
+                if (n <= 0) break;
+                body.write(buffer.array(), 0, n);
+                pos += n;
+            }
+        }
+    }
+}
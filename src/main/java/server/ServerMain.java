@@ -1,33 +1,75 @@
 package server;
 
 import shared.Constants;
+import shared.Metrics;
+import shared.TlsContexts;
+import shared.VirtualThreads;
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import javax.net.ssl.*;
 
 public class ServerMain {
     private static final Logger logger = LogManager.getLogger(ServerMain.class);
-    private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+    // Virtual threads σε Java 21+: μια session που περιμένει ένα stream όσο κρατάει η ταινία δεν κρατάει
+    // platform thread. Το πλήθος τους το φράζει το Admission.
+    private static final ExecutorService threadPool = VirtualThreads.executor("session");
+    // Με -Dserver.tls=false οι backends μιλάνε plaintext, όταν το TLS τερματίζεται στον load balancer
+    static final boolean TLS = Boolean.parseBoolean(System.getProperty("server.tls", String.valueOf(Constants.USE_SSL)));
+
+    private static final LongAdder CONNECTIONS = Metrics.counter("server_connections_total");
+
+    // Ready (HEALTH UP αντί για STARTING) = τελείωσε το αρχικό scan και το φόρτωμα του .media-index, ο κατάλογος
+    // έχει τουλάχιστον ένα rendition και όλα τα listeners έγιναν bind. Ένας κρύος κόμβος με άδειο κατάλογο μένει
+    // STARTING μέχρι να τελειώσει το πρώτο transcode. Ένα port που δεν έγινε bind τον κρατάει not ready.
+    private static final CountDownLatch listenersUp = new CountDownLatch(Constants.NUM_SERVERS);
+    private static final AtomicInteger bindFailures = new AtomicInteger();
+    private static volatile boolean catalogLoaded;
 
     public static void main(String[] args) throws InterruptedException {
         logger.info("Starting Video Streaming Server...");
-        VideoGenerator.generateMissingVideos();
-        logger.info("Video generation complete!");
+        MediaIndex.load();
+        Catalog.publish(Catalog.scan());
+        logger.info("Catalog indexed: " + Catalog.get().size() + " videos");
+        MediaIndex.refresh(Catalog.get().renditions()); // μόνο όσα δεν είναι ήδη στο .media-index
+        catalogLoaded = true;
+        CatalogWatcher.start();
+        startMetrics();
+        try {
+            SegmentServer.start(Constants.USE_SSL ? TlsContexts.server() : null);
+        } catch (IOException e) {
+            logger.error("Could not start segment server: " + e.getMessage());
+        }
 
         ExecutorService pool = Executors.newFixedThreadPool(Constants.NUM_SERVERS);
         for (int i = 0; i < Constants.NUM_SERVERS; i++) {
             final int serverPort = Constants.PORT + i;
+            Admission admission = new Admission(serverPort, threadPool);
             pool.execute(() -> {
-                try (ServerSocket serverSocket = createServerSocket(serverPort)) {
-                    logger.info("Streaming Server is running on port " + serverPort + (Constants.USE_SSL ? " (SSL)" : ""));
+                ServerSocket serverSocket;
+                try {
+                    serverSocket = createServerSocket(serverPort);
+                } catch (IOException e) {
+                    logger.error("Could not bind port " + serverPort + ": " + e.getMessage());
+                    bindFailures.incrementAndGet();
+                    listenersUp.countDown();
+                    return;
+                }
+                try (serverSocket) {
+                    logger.info("Streaming Server is running on port " + serverPort + (TLS ? " (SSL)" : "")
+                            + ", max " + Admission.MAX_SESSIONS + " sessions, " + Admission.MAX_ENCODES + " live encodes");
+                    listenersUp.countDown();
                     while (true) {
                         Socket clientSocket = serverSocket.accept();
+                        CONNECTIONS.increment();
                         logger.info("New client connected: " + clientSocket.getInetAddress() + ":" + clientSocket.getPort()
                                 + " on server port " + serverPort);
-                        threadPool.execute(new ClientHandler(clientSocket));
+                        admission.admit(clientSocket);
                     }
                 } catch (IOException e) {
                     logger.error("Server error on port " + serverPort + ": " + e.getMessage());
@@ -35,30 +77,47 @@ public class ServerMain {
                 }
             });
         }
-    }
 
-    private static ServerSocket createServerSocket(int port) throws IOException {
-        if (!Constants.USE_SSL) return new ServerSocket(port);
-        try {
-            // Set system properties (needed for default factory)
-            System.setProperty("javax.net.ssl.keyStore", Constants.KEYSTORE_PATH);
-            System.setProperty("javax.net.ssl.keyStorePassword", Constants.KEYSTORE_PASSWORD);
+        // Τα transcodes τρέχουν στο παρασκήνιο, κάθε rendition μπαίνει στον κατάλογο μόλις τελειώσει
+        int jobs = VideoGenerator.queueAllMissing();
+        logger.info("Queued " + jobs + " transcode jobs in the background");
+        listenersUp.await();
+        if (bindFailures.get() > 0) {
+            logger.error(bindFailures.get() + " of " + Constants.NUM_SERVERS + " ports failed to bind, reporting STARTING");
+        } else if (isReady()) {
+            logger.info("Server ready");
+        } else {
+            logger.info("Listening, but no playable rendition yet: STARTING until the first transcode finishes");
+        }
+    }
 
-            // Use explicit SSL context
-            char[] pass = Constants.KEYSTORE_PASSWORD.toCharArray();
-            java.security.KeyStore ks = java.security.KeyStore.getInstance("JKS");
-            ks.load(new java.io.FileInputStream(Constants.KEYSTORE_PATH), pass);
+    private static void startMetrics() {
+        Metrics.gauge("server_catalog_videos", () -> Catalog.get().size());
+        Metrics.gauge("server_live_streams", StreamHub::liveStreams);
+        Metrics.gauge("server_hub_viewers", StreamHub::viewers);
+        Metrics.gauge(Metrics.name("server_tls_handshakes_total", "kind", "full"), ClientHandler.TLS_HANDSHAKES::full);
+        Metrics.gauge(Metrics.name("server_tls_handshakes_total", "kind", "resumed"), ClientHandler.TLS_HANDSHAKES::resumed);
+        Metrics.start("server", Constants.SERVER_METRICS_PORT);
+    }
 
-            javax.net.ssl.KeyManagerFactory kmf = javax.net.ssl.KeyManagerFactory.getInstance("SunX509");
-            kmf.init(ks, pass);
+    // Το pool των ClientHandler, και για τα streams μιας binary σύνδεσης
+    static ExecutorService handlers() {
+        return threadPool;
+    }
 
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(kmf.getKeyManagers(), null, null);
+    public static boolean isReady() {
+        return catalogLoaded && listenersUp.getCount() == 0 && bindFailures.get() == 0
+                && !Catalog.get().renditions().isEmpty();
+    }
 
-            SSLServerSocketFactory ssf = sc.getServerSocketFactory();
-            return ssf.createServerSocket(port);
-        } catch (Exception e) {
-            throw new IOException("Could not start SSL server socket", e);
+    static ServerSocket createServerSocket(int port) throws IOException {
+        if (!TLS) {
+            // Μέσω channel ώστε τα sockets να έχουν SocketChannel για transferTo (sendfile)
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            return channel.socket();
         }
+        SSLServerSocketFactory ssf = TlsContexts.server().getServerSocketFactory();
+        return ssf.createServerSocket(port);
     }
 }
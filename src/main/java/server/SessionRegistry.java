@@ -0,0 +1,135 @@
+package server;
+
+import shared.Metrics;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Όλα τα TCP/UDP/RTP streams του server, ένα session ανά viewer. Ένα session τελειώνει με το stream ή μόλις
+// φύγει ο viewer: EOF ή STOP/CANCEL στη σύνδεση ελέγχου, σιωπή πάνω από KEEPALIVE_TIMEOUT_MS από client που
+// στέλνει keepalives, ή ICMP port unreachable στα datagrams. Τότε κλείνουν οι πόροι του (subscription στο
+// StreamHub, TCP socket, ffmpeg) και το κοινό ffmpeg σταματάει μόλις δεν το βλέπει κανείς.
+class SessionRegistry {
+    private static final Logger logger = LogManager.getLogger(SessionRegistry.class);
+    static final long KEEPALIVE_TIMEOUT_MS = Long.getLong("server.keepaliveTimeoutMs", 15000);
+    private static final long REAP_INTERVAL_MS = 1000;
+
+    static final String END = "end", EOF = "eof", CANCEL = "cancel", KEEPALIVE = "keepalive",
+            UNREACHABLE = "unreachable";
+    private static final String[] REASONS = {END, EOF, CANCEL, KEEPALIVE, UNREACHABLE};
+    private static final Metrics.Family<LongAdder> ENDED =
+            Metrics.family("server_stream_sessions_ended_total", "reason", REASONS, Metrics::counter);
+
+    private static final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private static final AtomicLong nextId = new AtomicLong(1);
+
+    static {
+        Metrics.gauge("server_stream_sessions_registered", sessions::size);
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleAtFixedRate(SessionRegistry::reap, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    static Session open(String videoPath, String protocol, SocketAddress client) {
+        Session session = new Session(nextId.getAndIncrement(), videoPath, protocol.toUpperCase(), client);
+        sessions.put(session.id, session);
+        return session;
+    }
+
+    // Για τα STATS
+    static int active() {
+        return sessions.size();
+    }
+
+    private static void reap() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(KEEPALIVE_TIMEOUT_MS);
+        for (Session session : sessions.values()) {
+            if (session.keepalives && now - session.lastSeen > timeout) session.end(KEEPALIVE);
+        }
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not release stream resource: " + e.getMessage());
+        }
+    }
+
+    static final class Session {
+        final long id;
+        final String videoPath, protocol;
+        final SocketAddress client;
+        private final long started = System.nanoTime();
+        private final List<Closeable> resources = new ArrayList<>();
+        private volatile long lastSeen = started;
+        private volatile boolean keepalives;
+        private String endReason; // υπό lock
+
+        private Session(long id, String videoPath, String protocol, SocketAddress client) {
+            this.id = id;
+            this.videoPath = videoPath;
+            this.protocol = protocol;
+            this.client = client;
+        }
+
+        // Keepalive από τον client: από εδώ και πέρα σιωπή πάνω από KEEPALIVE_TIMEOUT_MS σημαίνει ότι έφυγε
+        void alive() {
+            lastSeen = System.nanoTime();
+            keepalives = true;
+        }
+
+        // Κλείνει στο τέλος του session, αμέσως αν έχει ήδη τελειώσει
+        void onEnd(Closeable resource) {
+            synchronized (this) {
+                if (endReason == null) {
+                    resources.add(resource);
+                    return;
+                }
+            }
+            closeQuietly(resource);
+        }
+
+        synchronized boolean isEnded() {
+            return endReason != null;
+        }
+
+        // Μετράει μόνο η πρώτη αιτία, οι επόμενες κλήσεις δεν κάνουν τίποτα
+        void end(String reason) {
+            List<Closeable> release;
+            synchronized (this) {
+                if (endReason != null) return;
+                endReason = reason;
+                release = new ArrayList<>(resources);
+                resources.clear();
+            }
+            sessions.remove(id);
+            ENDED.get(reason).increment();
+            if (!reason.equals(END)) {
+                logger.info("Stream session " + this + " ended (" + reason + ") after "
+                        + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) + " s");
+            }
+            for (int i = release.size() - 1; i >= 0; i--) closeQuietly(release.get(i));
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + " " + protocol + " " + videoPath + " -> " + client;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package server;
+
+import shared.RtpPorts;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Ένα ffmpeg ανά (αρχείο, πρωτόκολλο) για live UDP/RTP streams, που μοιράζεται σε όλους τους viewers.
+// Το ffmpeg γράφει σε ένα ring buffer μέσα στο JVM και ένα sender thread στέλνει κάθε πακέτο σε
+// όλους τους subscribers. Όποιος μπαίνει αργότερα ξεκινάει από το επόμενο keyframe.
+// Κάθε viewer έχει δικό του connected DatagramChannel, ώστε ένα ICMP port unreachable να φτάνει σαν
+// PortUnreachableException στο send προς αυτόν τον viewer (με ένα κοινό unconnected channel χάνεται).
+public class StreamHub {
+    private static final Logger logger = LogManager.getLogger(StreamHub.class);
+    private static final Map<String, StreamHub> hubs = new ConcurrentHashMap<>();
+
+    private static final int RING_SLOTS = 4096;
+    private static final int TS_PACKET = 188;
+    private static final int TS_PER_DATAGRAM = 7; // 1316 bytes, χωράει σε ένα Ethernet MTU
+    private static final int MAX_DATAGRAM = 1500;
+    private static final int BURST_SLOTS = 256; // ένας viewer ξεκινάει από keyframe έως τόσα πακέτα πίσω
+    // Τόσα ICMP port unreachable μέσα σε UNREACHABLE_WINDOW_MS: ο receiver του viewer έκλεισε
+    private static final int UNREACHABLE_LIMIT = 3;
+    private static final long UNREACHABLE_WINDOW_MS = 5000;
+
+    private final String key;
+    private final String videoPath;
+    private final boolean rtp;
+
+    // Ring buffer: ο producer γράφει στο slot head % RING_SLOTS και μετά αυξάνει το head
+    private final byte[][] ring = new byte[RING_SLOTS][MAX_DATAGRAM];
+    private final int[] lengths = new int[RING_SLOTS];
+    private final boolean[] keyframes = new boolean[RING_SLOTS];
+    private final ByteBuffer[] producerViews = new ByteBuffer[RING_SLOTS];
+    private final ByteBuffer[] senderViews = new ByteBuffer[RING_SLOTS];
+    private volatile long head;
+
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private final CountDownLatch sdpReady = new CountDownLatch(1);
+    private volatile String sdp;
+    private Process process;
+    private DatagramChannel ingest, ingestRtcp;
+    private Thread producer, sender;
+    private boolean started;
+    private volatile boolean closed;
+
+    // Τελευταία PAT/PMT πακέτα του MPEG-TS, για όποιον μπαίνει στη μέση. Copy-on-write: ο producer
+    // δημοσιεύει νέο array και το sender thread δεν βλέπει ποτέ μισογραμμένο πακέτο.
+    private volatile byte[] psi = new byte[2 * TS_PACKET];
+    private volatile boolean havePat, havePmt;
+    private int pmtPid = -1;
+
+    private StreamHub(String key, String videoPath, boolean rtp) {
+        this.key = key;
+        this.videoPath = videoPath;
+        this.rtp = rtp;
+        for (int i = 0; i < RING_SLOTS; i++) {
+            producerViews[i] = ByteBuffer.wrap(ring[i]);
+            senderViews[i] = ByteBuffer.wrap(ring[i]);
+        }
+    }
+
+    // Γράφει τον viewer στο κοινό stream του αρχείου, ξεκινώντας το ffmpeg αν είναι ο πρώτος.
+    // Με active = false δεν στέλνεται τίποτα μέχρι το activate(), π.χ. μέχρι να ανοίξει ο receiver του client.
+    public static Subscription subscribe(String videoPath, String protocol, InetSocketAddress target,
+                                         boolean active) throws IOException {
+        boolean rtp = protocol.equalsIgnoreCase("RTP");
+        String key = key(videoPath, protocol);
+        while (true) {
+            StreamHub hub = hubs.computeIfAbsent(key, k -> new StreamHub(k, videoPath, rtp));
+            Subscription s = hub.add(target, active);
+            if (s != null) return s;
+            hubs.remove(key, hub); // το hub έκλεινε, δοκιμάζουμε με καινούργιο
+        }
+    }
+
+    // Υπάρχει ήδη ffmpeg για το αρχείο και το πρωτόκολλο, οπότε ένας ακόμα viewer δεν κοστίζει encode
+    public static boolean isLive(String videoPath, String protocol) {
+        return hubs.containsKey(key(videoPath, protocol));
+    }
+
+    private static String key(String videoPath, String protocol) {
+        return new File(videoPath).getName() + "|" + (protocol.equalsIgnoreCase("RTP") ? "RTP" : "UDP");
+    }
+
+    // Για τα STATS: πόσα live streams τρέχουν και πόσοι τα βλέπουν
+    public static int liveStreams() {
+        return hubs.size();
+    }
+
+    public static int viewers() {
+        int viewers = 0;
+        for (StreamHub hub : hubs.values()) viewers += hub.subscribers.size();
+        return viewers;
+    }
+
+    private synchronized Subscription add(InetSocketAddress target, boolean active) throws IOException {
+        if (closed) return null;
+        if (!started) {
+            started = true;
+            try {
+                start();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+        Subscription s = new Subscription(target, active);
+        try {
+            s.channel.connect(target);
+        } catch (IOException e) {
+            s.channel.close();
+            if (subscribers.isEmpty()) close();
+            throw e;
+        }
+        subscribers.add(s);
+        logger.info("Viewer " + target + " joined " + key + " (" + subscribers.size() + " viewers)");
+        return s;
+    }
+
+    private synchronized void remove(Subscription s) {
+        if (!subscribers.remove(s)) return;
+        logger.info("Viewer " + s.target + " left " + key + " (" + subscribers.size() + " viewers)");
+        if (subscribers.isEmpty()) close();
+    }
+
+    private void start() throws IOException {
+        if (rtp) {
+            DatagramChannel[] pair = RtpPorts.bindPair(InetAddress.getLoopbackAddress());
+            ingest = pair[0];
+            ingestRtcp = pair[1];
+            process = VideoStreamer.startRtpSource(videoPath, ingest.socket().getLocalPort());
+            process.onExit().thenRun(this::close); // το receive() δεν βλέπει EOF
+            producer = new Thread(this::readRtp, "hub-in-" + key);
+            Thread sdpReader = new Thread(this::readSdp, "hub-sdp-" + key);
+            sdpReader.setDaemon(true);
+            sdpReader.start();
+        } else {
+            process = VideoStreamer.startTsSource(videoPath);
+            producer = new Thread(this::readTs, "hub-in-" + key);
+            sdpReady.countDown();
+        }
+        sender = new Thread(this::send, "hub-out-" + key);
+        producer.setDaemon(true);
+        sender.setDaemon(true);
+        producer.start();
+        sender.start();
+    }
+
+    // Το ffmpeg τυπώνει το SDP στο stdout ("SDP:", οι γραμμές του, κενή γραμμή) μόλις γράψει το header
+    private void readSdp() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            StringBuilder text = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (text == null) {
+                    if (line.trim().equals("SDP:")) text = new StringBuilder();
+                } else if (line.isEmpty() && text.length() > 0) {
+                    sdp = text.toString();
+                    logger.info("SDP generated by ffmpeg for " + key + ":\n" + sdp);
+                    sdpReady.countDown();
+                    text = null;
+                    while (in.readLine() != null) {} // αδειάζουμε το pipe μέχρι να τελειώσει το ffmpeg
+                    break;
+                } else if (!line.isEmpty()) {
+                    text.append(line).append("\n");
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) logger.warn("Could not read SDP for " + key + ": " + e.getMessage());
+        } finally {
+            sdpReady.countDown();
+        }
+    }
+
+    private void readTs() {
+        int datagram = TS_PACKET * TS_PER_DATAGRAM;
+        try (InputStream in = process.getInputStream()) {
+            while (!closed) {
+                int slot = (int) (head % RING_SLOTS);
+                byte[] buf = ring[slot];
+                int n = 0, r;
+                while (n < datagram && (r = in.read(buf, n, datagram - n)) > 0) n += r;
+                if (n == 0) break;
+                boolean keyframe = false;
+                for (int off = 0; off + TS_PACKET <= n; off += TS_PACKET) {
+                    keyframe |= inspectTsPacket(buf, off);
+                }
+                publish(slot, n, keyframe);
+                if (n < datagram) break; // τέλος αρχείου
+            }
+        } catch (IOException e) {
+            if (!closed) logger.warn("Stream source for " + key + " failed: " + e.getMessage());
+        }
+        close();
+    }
+
+    private void readRtp() {
+        try {
+            while (!closed) {
+                int slot = (int) (head % RING_SLOTS);
+                ByteBuffer buf = producerViews[slot];
+                buf.clear();
+                ingest.receive(buf);
+                publish(slot, buf.position(), isRtpKeyframe(ring[slot], buf.position()));
+            }
+        } catch (IOException e) {
+            if (!closed) logger.warn("RTP ingest for " + key + " failed: " + e.getMessage());
+        }
+    }
+
+    private void publish(int slot, int length, boolean key) {
+        lengths[slot] = length;
+        keyframes[slot] = key;
+        head = head + 1; // μόνο ο producer γράφει το head
+        LockSupport.unpark(sender);
+    }
+
+    private void send() {
+        long seen = 0;
+        while (!closed) {
+            long h = head;
+            if (h == seen) {
+                LockSupport.parkNanos(5_000_000);
+                continue;
+            }
+            for (Subscription s : subscribers) {
+                s.drain(h);
+            }
+            seen = h;
+        }
+    }
+
+    // Επιστρέφει true αν το πακέτο ξεκινάει keyframe (random_access_indicator), κρατάει PAT/PMT
+    private boolean inspectTsPacket(byte[] b, int off) {
+        if (b[off] != 0x47) return false;
+        int pid = ((b[off + 1] & 0x1F) << 8) | (b[off + 2] & 0xFF);
+        boolean payloadStart = (b[off + 1] & 0x40) != 0;
+        int afc = (b[off + 3] >> 4) & 0x3;
+        boolean hasAf = (afc & 0x2) != 0;
+        int afLength = hasAf ? b[off + 4] & 0xFF : 0;
+
+        if (payloadStart && (pid == 0 || pid == pmtPid)) {
+            int base = pid == 0 ? 0 : TS_PACKET;
+            byte[] next = psi.clone();
+            System.arraycopy(b, off, next, base, TS_PACKET);
+            psi = next;
+            if (pid == 0) {
+                havePat = true;
+                pmtPid = parsePmtPid(b, off, hasAf ? 5 + afLength : 4);
+            } else {
+                havePmt = true;
+            }
+        }
+        return hasAf && afLength > 0 && (b[off + 5] & 0x40) != 0;
+    }
+
+    // Το PID του πρώτου προγράμματος από το PAT
+    private static int parsePmtPid(byte[] b, int off, int payload) {
+        int sec = off + payload + 1 + (b[off + payload] & 0xFF);
+        int sectionLength = ((b[sec + 1] & 0x0F) << 8) | (b[sec + 2] & 0xFF);
+        int end = Math.min(sec + 3 + sectionLength - 4, off + TS_PACKET - 4);
+        for (int i = sec + 8; i <= end - 4; i += 4) {
+            int program = ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF);
+            if (program != 0) return ((b[i + 2] & 0x1F) << 8) | (b[i + 3] & 0xFF);
+        }
+        return -1;
+    }
+
+    // H.264 σε RTP: IDR (5) ή SPS (7), είτε μόνο του, είτε πρώτο σε STAP-A, είτε αρχή FU-A
+    private static boolean isRtpKeyframe(byte[] b, int length) {
+        if (length < 13) return false;
+        int payload = 12 + 4 * (b[0] & 0x0F);
+        if ((b[0] & 0x10) != 0 && length >= payload + 4) { // header extension
+            payload += 4 + 4 * (((b[payload + 2] & 0xFF) << 8) | (b[payload + 3] & 0xFF));
+        }
+        if (payload >= length) return false;
+        int nalType = b[payload] & 0x1F;
+        if (nalType == 24 && payload + 3 < length) { // STAP-A
+            nalType = b[payload + 3] & 0x1F;
+        } else if (nalType == 28 && payload + 1 < length) { // FU-A
+            if ((b[payload + 1] & 0x80) == 0) return false;
+            nalType = b[payload + 1] & 0x1F;
+        }
+        return nalType == 5 || nalType == 7;
+    }
+
+    private synchronized void close() {
+        if (closed) return;
+        closed = true;
+        hubs.remove(key, this);
+        if (process != null) process.destroy();
+        for (DatagramChannel ch : new DatagramChannel[]{ingest, ingestRtcp}) {
+            if (ch == null) continue;
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+        sdpReady.countDown();
+        for (Subscription s : subscribers) {
+            s.firstSent.countDown();
+            s.ended.countDown();
+        }
+        logger.info("Stream " + key + " stopped");
+    }
+
+    public final class Subscription {
+        private final InetSocketAddress target;
+        private final DatagramChannel channel;
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private final CountDownLatch firstSent = new CountDownLatch(1);
+        private volatile boolean active;
+        private boolean sentAny;
+        private long joinSeq = -1;
+        private long cursor = -1; // -1: περιμένει keyframe
+        private int refused;
+        private long lastRefused;
+        private volatile Runnable onUnreachable;
+
+        private Subscription(InetSocketAddress target, boolean active) throws IOException {
+            this.target = target;
+            this.active = active;
+            this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        }
+
+        // Καλείται μόνο από το sender thread
+        private void drain(long h) {
+            if (!active || !channel.isOpen()) return;
+            if (joinSeq < 0) {
+                // Πρώτη φορά: από το πιο πρόσφατο παράθυρο, για να μην περιμένει ολόκληρο GOP
+                joinSeq = Math.max(0, h - BURST_SLOTS);
+            }
+            // Στο h - cursor == RING_SLOTS ο producer ήδη γράφει το slot του cursor
+            if (cursor >= 0 && h - cursor >= RING_SLOTS) lapped(h);
+            if (cursor < 0) {
+                for (long q = Math.max(joinSeq, h - RING_SLOTS + 1); q < h; q++) {
+                    if (keyframes[(int) (q % RING_SLOTS)]) {
+                        cursor = q;
+                        break;
+                    }
+                }
+                if (cursor < 0) {
+                    joinSeq = h;
+                    return;
+                }
+                sendPsi();
+            }
+            try {
+                while (cursor < h) {
+                    int slot = (int) (cursor % RING_SLOTS);
+                    ByteBuffer view = senderViews[slot];
+                    view.limit(lengths[slot]).position(0);
+                    channel.write(view);
+                    // Ο producer μπορεί να μας προσπεράσει στη μέση του batch
+                    long now = head;
+                    if (now - cursor >= RING_SLOTS) {
+                        lapped(now);
+                        return;
+                    }
+                    cursor++;
+                    if (!sentAny) {
+                        sentAny = true;
+                        firstSent.countDown();
+                    }
+                }
+            } catch (PortUnreachableException e) {
+                cursor = h;
+                refused();
+            } catch (IOException e) {
+                if (!closed && channel.isOpen()) logger.warn("Send to " + target + " failed: " + e.getMessage());
+                cursor = h;
+            }
+        }
+
+        // Έμεινε πίσω όσο ένα ολόκληρο ring: ξανά από το επόμενο keyframe
+        private void lapped(long h) {
+            cursor = -1;
+            joinSeq = h - RING_SLOTS;
+        }
+
+        // Ένα ICMP μπορεί να έρθει και σε μια στιγμιαία αλλαγή του receiver, οπότε μετράμε λίγα στη σειρά
+        private void refused() {
+            long now = System.nanoTime();
+            if (now - lastRefused > UNREACHABLE_WINDOW_MS * 1_000_000) refused = 0;
+            lastRefused = now;
+            Runnable callback = onUnreachable;
+            if (++refused >= UNREACHABLE_LIMIT && callback != null) {
+                logger.info("Viewer " + target + " of " + key + " is unreachable");
+                onUnreachable = null;
+                callback.run();
+            }
+        }
+
+        private void sendPsi() {
+            if (rtp || !havePat || !havePmt) return;
+            try {
+                channel.write(ByteBuffer.wrap(psi));
+            } catch (IOException ignored) {}
+        }
+
+        // Το SDP του κοινού stream, με διεύθυνση και port του συγκεκριμένου viewer
+        public String sdp() throws InterruptedException {
+            sdpReady.await();
+            if (sdp == null) return null;
+            StringBuilder rewritten = new StringBuilder();
+            for (String line : sdp.split("\\R")) {
+                if (line.startsWith("c=IN IP4 ")) {
+                    line = "c=IN IP4 " + target.getAddress().getHostAddress();
+                } else if (line.startsWith("m=video ")) {
+                    line = line.replaceFirst("^m=video \\d+", "m=video " + target.getPort());
+                }
+                rewritten.append(line).append(System.lineSeparator());
+            }
+            return rewritten.toString();
+        }
+
+        public void activate() {
+            active = true;
+            LockSupport.unpark(sender);
+        }
+
+        // true μόλις φύγει το πρώτο πακέτο προς τον viewer, false αν το stream τελείωσε πριν από αυτό
+        public boolean awaitFirstPacket() throws InterruptedException {
+            firstSent.await();
+            return sentAny;
+        }
+
+        // Μπλοκάρει μέχρι να τελειώσει το stream
+        public void awaitEnd() throws InterruptedException {
+            ended.await();
+        }
+
+        // Καλείται από το sender thread όταν ο viewer δεν είναι πια εκεί (ICMP port unreachable)
+        public void onUnreachable(Runnable callback) {
+            onUnreachable = callback;
+        }
+
+        // Ο viewer φεύγει: ξυπνάει όποιον περιμένει και, αν ήταν ο τελευταίος, σταματάει το ffmpeg
+        public void close() {
+            remove(this);
+            try { channel.close(); } catch (IOException ignored) {}
+            firstSent.countDown();
+            ended.countDown();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package server;
+
+import shared.BusyException;
+import shared.Constants;
+import shared.LatencyHistogram;
+import shared.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Ένα STREAM αίτημα, ίδιο για το text και για το binary protocol.
+// Οι απαντήσεις προς τον client περνάνε από το Control της κάθε σύνδεσης.
+class StreamSession {
+    private static final Logger logger = LogManager.getLogger(StreamSession.class);
+    private static final int READY_TIMEOUT_MS = 10000;
+    private static final String[] PROTOCOLS = {"TCP", "UDP", "RTP", "HLS", "ABR", "INBAND"};
+    private static final Metrics.Family<LongAdder> REQUESTS =
+            Metrics.family("server_stream_requests_total", "protocol", PROTOCOLS, Metrics::counter);
+    private static final Metrics.Family<AtomicLong> ACTIVE =
+            Metrics.family("server_stream_sessions", "protocol", PROTOCOLS, Metrics::gauge);
+    // Ως το πρώτο πακέτο (TCP/UDP/RTP) ή ως το URL του playlist (HLS/ABR)
+    private static final Metrics.Family<LatencyHistogram> SETUP =
+            Metrics.family("server_stream_setup_micros", "protocol", PROTOCOLS, Metrics::histogram);
+
+    interface Control {
+        void notFound();
+        void busy(long retryAfterMs);
+        void streaming(String playlistUrl); // null εκτός από HLS/ABR
+        void sdp(String sdp);
+        void ready();
+        void firstPacket();
+        // INBAND: bytes του MPEG-TS στην ίδια τη σύνδεση ελέγχου
+        void media(byte[] buffer, int length) throws IOException;
+        // RTP: true όταν ο client πει ότι ο receiver του είναι bound
+        boolean awaitClientReady(int timeoutMs) throws InterruptedException;
+        // Από εδώ ως το τέλος του stream η σύνδεση ελέγχου δεν περιμένει άλλη απάντηση από τον client:
+        // EOF, STOP/CANCEL ή keepalives της πάνε στο session
+        void watch(SessionRegistry.Session session);
+    }
+
+    static void run(String movie, String resolution, String format, String protocol, int port,
+                    Socket connection, Control control) throws IOException {
+        long requestStart = System.nanoTime();
+        logger.info("Stream request - Movie: " + movie + ", Resolution: " + resolution +
+                ", Format: " + format + ", Protocol: " + protocol + ", Port: " + port);
+
+        VideoGenerator.recordDemand(movie);
+
+        String videoPath = Constants.VIDEO_DIR + movie + "-" + resolution + "." + format;
+        logger.info("Request to play: " + videoPath);
+        File file = new File(videoPath);
+        if (!file.exists()) {
+            logger.warn("Requested file not found: " + videoPath);
+            control.notFound();
+            return;
+        }
+        REQUESTS.get(protocol).increment();
+        LatencyHistogram setup = SETUP.get(protocol);
+
+        if (protocol.equalsIgnoreCase("HLS")) {
+            // Segments από τον δίσκο μέσω HTTP, χωρίς ffmpeg ανά viewer
+            Rendition rendition = new Rendition(movie, resolution, format);
+            try {
+                SegmentPackager.ensurePackaged(rendition).get();
+            } catch (Exception e) {
+                logger.warn("Packaging failed for " + videoPath + ": " + e.getMessage());
+                control.notFound();
+                return;
+            }
+            control.streaming(SegmentServer.playlistUrl(connection.getLocalAddress().getHostAddress(), rendition));
+            setup.record((System.nanoTime() - requestStart) / 1000);
+            return;
+        }
+
+        if (protocol.equalsIgnoreCase("ABR")) {
+            // Master playlist με όλα τα renditions του format. Το πακετάρισμα ξεκινάει για όλα από τώρα,
+            // ώστε μια αλλαγή rendition να βρει τα segments έτοιμα.
+            for (Rendition r : Catalog.get().renditionsOf(movie)) {
+                if (r.format().equals(format)) SegmentPackager.ensurePackaged(r);
+            }
+            control.streaming(SegmentServer.masterUrl(connection.getLocalAddress().getHostAddress(), movie, format));
+            setup.record((System.nanoTime() - requestStart) / 1000);
+            return;
+        }
+
+        // Νέο live encode χρειάζεται το TCP/INBAND πάντα και το UDP/RTP αν δεν παίζει ήδη το αρχείο
+        boolean inBand = protocol.equalsIgnoreCase("INBAND");
+        boolean needsEncode = protocol.equalsIgnoreCase("TCP") || inBand || !StreamHub.isLive(videoPath, protocol);
+        if (needsEncode && Admission.encodesFull()) {
+            Admission.busyEncodes();
+            control.busy(Admission.retryAfterMs());
+            return;
+        }
+        control.streaming(null);
+
+        // TCP: READY όταν ακούει ο server. UDP: ο client είναι ήδη bound πριν το αίτημα.
+        // RTP: μετά το SDP περιμένουμε READY από τον client, όταν ο receiver του ffplay είναι bound.
+        // INBAND: τα media ακολουθούν αμέσως, το πρώτο chunk είναι και το πρώτο πακέτο.
+        Runnable firstPacket = () -> {
+            if (!inBand) control.firstPacket();
+            long micros = (System.nanoTime() - requestStart) / 1000;
+            setup.record(micros);
+            logger.info("First packet of " + videoPath + " via " + protocol + " after " + micros / 1000 + " ms");
+        };
+        AtomicLong active = ACTIVE.get(protocol);
+        active.incrementAndGet();
+        SessionRegistry.Session session = SessionRegistry.open(videoPath, protocol, connection.getRemoteSocketAddress());
+        try {
+            stream(videoPath, protocol, port, connection, control, session, firstPacket);
+        } catch (BusyException e) {
+            // Το τελευταίο permit πιάστηκε ανάμεσα στον έλεγχο και το encode
+            control.busy(e.retryAfterMs());
+        } catch (IOException e) {
+            if (!session.isEnded()) throw e; // αλλιώς ο client έφυγε και κλείσαμε εμείς τους πόρους
+        } finally {
+            session.end(SessionRegistry.END);
+            active.decrementAndGet();
+        }
+    }
+
+    private static void stream(String videoPath, String protocol, int port, Socket connection, Control control,
+                               SessionRegistry.Session session, Runnable firstPacket) throws IOException {
+        if (protocol.equalsIgnoreCase("TCP")) {
+            control.watch(session);
+            VideoStreamer.streamViaTCP(videoPath, port, session, control::ready, firstPacket);
+        } else if (protocol.equalsIgnoreCase("INBAND")) {
+            control.watch(session);
+            VideoStreamer.streamInBand(videoPath, session, control::media, firstPacket);
+        } else if (protocol.equalsIgnoreCase("UDP") || protocol.equalsIgnoreCase("RTP")) {
+            boolean rtp = protocol.equalsIgnoreCase("RTP");
+            String clientIP = connection.getInetAddress().getHostAddress();
+            // RTP: ο client έχει διαλέξει ελεύθερο ζεύγος port (RTP ζυγό, RTCP port + 1)
+            StreamHub.Subscription subscription = StreamHub.subscribe(videoPath, protocol,
+                    new InetSocketAddress(clientIP, port), !rtp);
+            session.onEnd(subscription::close);
+            subscription.onUnreachable(() -> session.end(SessionRegistry.UNREACHABLE));
+            try {
+                if (rtp) {
+                    String sdp = subscription.sdp();
+                    if (sdp == null) {
+                        logger.warn("No SDP generated for " + videoPath);
+                        return;
+                    }
+                    control.sdp(sdp);
+                    if (!control.awaitClientReady(READY_TIMEOUT_MS)) return;
+                    subscription.activate();
+                }
+                control.watch(session);
+                if (subscription.awaitFirstPacket()) firstPacket.run();
+                subscription.awaitEnd();
+            } catch (InterruptedException ignored) {
+            } finally {
+                subscription.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package server;
+
+import shared.Constants;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Συνθετική πηγή στη θέση του ffmpeg για load tests (-Dserver.stubSources=true): MPEG-TS στο stdout
+// (PAT, PMT, keyframe με random_access_indicator κάθε δευτερόλεπτο) ή H.264-like RTP με SDP στο stdout,
+// στο bitrate του resolution και σε live ρυθμό. Δεν διαβάζει το αρχείο, οπότε δεν χρειάζεται ούτε ffmpeg.
+class StubSource extends Process {
+    private static final Logger logger = LogManager.getLogger(StubSource.class);
+    static final boolean ENABLED = Boolean.getBoolean("server.stubSources");
+    private static final int SECONDS = Integer.getInteger("server.stubSeconds", 60);
+    private static final int TS_PACKET = 188;
+    private static final int TS_PER_WRITE = 7;
+    private static final int RTP_PACKET = 1200;
+    private static final int VIDEO_PID = 0x100, PMT_PID = 0x1000;
+
+    private final PipedInputStream stdout = new PipedInputStream(64 * 1024);
+    private final PipedOutputStream sink;
+    private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+    private final double bytesPerSecond;
+    private boolean live = true;
+    private volatile boolean destroyed;
+
+    private StubSource(String videoPath) throws IOException {
+        this.sink = new PipedOutputStream(stdout);
+        Rendition rendition = Rendition.parse(new File(videoPath).getName());
+        double mbps = rendition != null ? CatalogIndex.bitrate(rendition.resolution()) : Constants.BITRATE_360P;
+        this.bytesPerSecond = mbps * 1_000_000 / 8;
+    }
+
+    // live = false: όσο γρήγορα διαβάζει ο αναγνώστης, όπως το ffmpeg χωρίς -re
+    static Process ts(String videoPath, boolean live) throws IOException {
+        StubSource source = new StubSource(videoPath);
+        source.live = live;
+        source.start(source::writeTs, videoPath);
+        return source;
+    }
+
+    static Process rtp(String videoPath, int hubPort) throws IOException {
+        StubSource source = new StubSource(videoPath);
+        source.start(() -> source.sendRtp(hubPort), videoPath);
+        return source;
+    }
+
+    private interface Body {
+        void run() throws IOException;
+    }
+
+    private void start(Body body, String videoPath) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (IOException e) {
+                if (!destroyed) logger.debug("Stub source for " + videoPath + " stopped: " + e.getMessage());
+            } finally {
+                try { sink.close(); } catch (IOException ignored) {}
+                exit.complete(destroyed ? 255 : 0);
+            }
+        }, "stub-source");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void writeTs() throws IOException {
+        long packetsPerSecond = Math.max(TS_PER_WRITE, Math.round(bytesPerSecond / TS_PACKET));
+        long total = packetsPerSecond * SECONDS;
+        byte[] chunk = new byte[TS_PACKET * TS_PER_WRITE];
+        int continuity = 0;
+        long start = System.nanoTime();
+        for (long sent = 0; sent < total && !destroyed; ) {
+            for (int k = 0; k < TS_PER_WRITE; k++, sent++) {
+                int off = k * TS_PACKET;
+                long inSecond = sent % packetsPerSecond;
+                if (inSecond == 0) psi(chunk, off, 0, pat());
+                else if (inSecond == 1) psi(chunk, off, PMT_PID, pmt());
+                else continuity = video(chunk, off, inSecond == 2, continuity);
+            }
+            sink.write(chunk);
+            sink.flush();
+            if (live) pace(start, sent, packetsPerSecond);
+        }
+    }
+
+    private void sendRtp(int hubPort) throws IOException {
+        // Όπως το ffmpeg: πρώτα το SDP, μετά τα πακέτα
+        String sdp = "SDP:\nv=0\no=- 0 0 IN IP4 127.0.0.1\ns=Stub\nc=IN IP4 127.0.0.1\nt=0 0\n"
+                + "m=video " + hubPort + " RTP/AVP 96\na=rtpmap:96 H264/90000\n\n";
+        sink.write(sdp.getBytes());
+        sink.flush();
+        long packetsPerSecond = Math.max(1, Math.round(bytesPerSecond / RTP_PACKET));
+        long total = packetsPerSecond * SECONDS;
+        ByteBuffer packet = ByteBuffer.allocate(RTP_PACKET);
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.connect(new InetSocketAddress("127.0.0.1", hubPort));
+            long start = System.nanoTime();
+            for (long sent = 0; sent < total && !destroyed; sent++) {
+                packet.clear();
+                packet.put((byte) 0x80).put((byte) 96).putShort((short) sent)
+                        .putInt((int) (sent * 90000 / packetsPerSecond)).putInt(0x5354_5542);
+                packet.put((byte) (sent % packetsPerSecond == 0 ? 0x65 : 0x41)); // IDR ανά δευτερόλεπτο
+                packet.position(RTP_PACKET).flip();
+                channel.write(packet);
+                pace(start, sent + 1, packetsPerSecond);
+            }
+        }
+    }
+
+    private void pace(long start, long sent, long perSecond) {
+        long due = start + sent * 1_000_000_000L / perSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) LockSupport.parkNanos(wait);
+    }
+
+    private static void psi(byte[] b, int off, int pid, byte[] section) {
+        Arrays.fill(b, off, off + TS_PACKET, (byte) 0xFF);
+        b[off] = 0x47;
+        b[off + 1] = (byte) (0x40 | (pid >> 8));
+        b[off + 2] = (byte) pid;
+        b[off + 3] = 0x10;
+        b[off + 4] = 0; // pointer field
+        System.arraycopy(section, 0, b, off + 5, section.length);
+    }
+
+    // Ένα πρόγραμμα, με το PMT στο PMT_PID. Το CRC δεν ελέγχεται από κανέναν στη διαδρομή.
+    private static byte[] pat() {
+        return new byte[]{0x00, (byte) 0xB0, 13, 0x00, 0x01, (byte) 0xC1, 0, 0,
+                0x00, 0x01, (byte) (0xE0 | (PMT_PID >> 8)), (byte) PMT_PID, 0, 0, 0, 0};
+    }
+
+    private static byte[] pmt() {
+        return new byte[]{0x02, (byte) 0xB0, 18, 0x00, 0x01, (byte) 0xC1, 0, 0,
+                (byte) (0xE0 | (VIDEO_PID >> 8)), (byte) VIDEO_PID, (byte) 0xF0, 0,
+                0x1B, (byte) (0xE0 | (VIDEO_PID >> 8)), (byte) VIDEO_PID, (byte) 0xF0, 0, 0, 0, 0, 0};
+    }
+
+    private static int video(byte[] b, int off, boolean keyframe, int continuity) {
+        b[off] = 0x47;
+        b[off + 1] = (byte) ((keyframe ? 0x40 : 0) | (VIDEO_PID >> 8));
+        b[off + 2] = (byte) VIDEO_PID;
+        if (keyframe) {
+            b[off + 3] = (byte) (0x30 | continuity);
+            b[off + 4] = 7;
+            b[off + 5] = 0x40; // random_access_indicator
+            Arrays.fill(b, off + 6, off + TS_PACKET, (byte) 0x5A);
+        } else {
+            b[off + 3] = (byte) (0x10 | continuity);
+            Arrays.fill(b, off + 4, off + TS_PACKET, (byte) 0x5A);
+        }
+        return (continuity + 1) & 0x0F;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            return exit.get();
+        } catch (ExecutionException e) {
+            return 1;
+        }
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        Integer value = exit.getNow(null);
+        if (value == null) throw new IllegalThreadStateException("Stub source is still running");
+        return value;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit.thenApply(code -> this);
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        try { stdout.close(); } catch (IOException ignored) {}
+    }
+}
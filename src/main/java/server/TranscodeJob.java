@@ -0,0 +1,91 @@
+package server;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Ένα ladder job: όλα τα renditions που λείπουν για έναν τίτλο, από μία πηγή.
+// Κόστος = διάρκεια πηγής x pixels όλων των targets.
+public final class TranscodeJob {
+    private final String movie;
+    private final List<Rendition> targets;
+    private final File source;
+    private final double durationSec;
+    private final double cost;
+    private final long seq;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    // Αλλάζει μόνο όσο το job είναι εκτός ουράς (βλ. TranscodeScheduler.recordDemand)
+    volatile long demand;
+
+    private volatile Process process;
+    private volatile boolean cancelled;
+    private volatile long startedAt;
+    private volatile double outTimeSec;
+    private volatile double speed;
+
+    TranscodeJob(String movie, List<Rendition> targets, File source, double durationSec, long seq) {
+        this.movie = movie;
+        this.targets = targets;
+        this.source = source;
+        this.durationSec = durationSec;
+        this.seq = seq;
+        double pixels = 0;
+        for (Rendition t : targets) {
+            double height = Double.parseDouble(t.resolution().replace("p", ""));
+            pixels += height * height * 16 / 9;
+        }
+        this.cost = Math.max(durationSec, 1) * pixels;
+    }
+
+    public String movie() { return movie; }
+    public List<Rendition> targets() { return targets; }
+    public File source() { return source; }
+    public double durationSec() { return durationSec; }
+    public double cost() { return cost; }
+    long seq() { return seq; }
+    public CompletableFuture<Void> done() { return done; }
+    public boolean isCancelled() { return cancelled; }
+
+    void started() {
+        startedAt = System.currentTimeMillis();
+    }
+
+    // Αν το job ακυρώθηκε όσο ξεκινούσε το ffmpeg, το σκοτώνουμε αμέσως
+    void attach(Process p) {
+        process = p;
+        if (cancelled) p.destroyForcibly();
+    }
+
+    void cancel() {
+        cancelled = true;
+        Process p = process;
+        if (p != null) p.destroyForcibly();
+    }
+
+    void progress(double outTimeSec, double speed) {
+        this.outTimeSec = outTimeSec;
+        if (speed > 0) this.speed = speed;
+    }
+
+    // 0..1, ή -1 αν δεν ξέρουμε τη διάρκεια
+    public double fraction() {
+        return durationSec > 0 ? Math.min(1.0, outTimeSec / durationSec) : -1;
+    }
+
+    // Εκτίμηση σε δευτερόλεπτα από το speed του ffmpeg (x realtime), -1 αν δεν είναι γνωστή
+    public double etaSec() {
+        if (durationSec <= 0 || speed <= 0) return -1;
+        return Math.max(0, durationSec - outTimeSec) / speed;
+    }
+
+    @Override
+    public String toString() {
+        if (startedAt == 0) return movie + " " + targets.size() + " renditions (queued, demand " + demand + ")";
+        // Χωρίς διάρκεια δεν ξέρουμε ούτε ποσοστό ούτε ETA
+        double fraction = fraction(), eta = etaSec();
+        return String.format("%s %d renditions: %s at %.2fx, ETA %s, running %ds", movie, targets.size(),
+                fraction < 0 ? "?" : String.format("%.0f%%", fraction * 100), speed,
+                eta < 0 ? "?" : String.format("%.0fs", eta), (System.currentTimeMillis() - startedAt) / 1000);
+    }
+}
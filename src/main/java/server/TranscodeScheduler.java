@@ -0,0 +1,145 @@
+package server;
+
+import shared.Metrics;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Ουρά προτεραιότητας για transcode jobs: πρώτα οι τίτλοι που ζητάνε οι clients, μετά τα φθηνότερα
+// jobs (ώστε να γίνονται γρήγορα διαθέσιμα όσο περισσότερα renditions γίνεται), μετά FIFO.
+public class TranscodeScheduler {
+    private static final Logger logger = LogManager.getLogger(TranscodeScheduler.class);
+    private static final long REPORT_INTERVAL_SEC = 10;
+
+    private static final Comparator<TranscodeJob> ORDER = Comparator
+            .comparingLong((TranscodeJob j) -> -j.demand)
+            .thenComparingDouble(TranscodeJob::cost)
+            .thenComparingLong(TranscodeJob::seq);
+
+    private final PriorityBlockingQueue<TranscodeJob> queue = new PriorityBlockingQueue<>(64, ORDER);
+    private final Set<TranscodeJob> running = ConcurrentHashMap.newKeySet();
+    private final Map<String, LongAdder> demand = new ConcurrentHashMap<>();
+    // movie -> seq τη στιγμή του τελευταίου cancel. Ένα job που ένας worker έχει βγάλει από την ουρά αλλά δεν
+    // έχει βάλει ακόμα στα running δεν το βλέπει το cancel, οπότε ο worker ελέγχει αυτό πριν το ξεκινήσει.
+    private final Map<String, Long> cancelledBefore = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final Consumer<TranscodeJob> runner;
+
+    TranscodeScheduler(int threads, Consumer<TranscodeJob> runner) {
+        this.runner = runner;
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::work, "vid-gen-" + i);
+            t.setDaemon(false);
+            t.start();
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vid-gen-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::report, REPORT_INTERVAL_SEC, REPORT_INTERVAL_SEC, TimeUnit.SECONDS);
+        Metrics.gauge("server_transcode_queued", queue::size);
+        Metrics.gauge("server_transcode_running", running::size);
+    }
+
+    long nextSeq() {
+        return seq.getAndIncrement();
+    }
+
+    void submit(TranscodeJob job) {
+        job.demand = demandOf(job.movie());
+        queue.add(job);
+    }
+
+    // Ένας client ζήτησε αυτόν τον τίτλο: τα jobs του ανεβαίνουν στην ουρά
+    public void recordDemand(String movie) {
+        demand.computeIfAbsent(movie, k -> new LongAdder()).increment();
+        long current = demandOf(movie);
+        for (TranscodeJob job : queue) {
+            // Το PriorityBlockingQueue δεν ξαναταξινομεί αλλαγμένα στοιχεία, οπότε remove + add
+            if (job.movie().equals(movie) && queue.remove(job)) {
+                job.demand = current;
+                queue.add(job);
+            }
+        }
+    }
+
+    // Ακυρώνει όλα τα jobs ενός τίτλου, σε ουρά ή σε εξέλιξη
+    public int cancel(String movie) {
+        int cancelled = 0;
+        synchronized (this) {
+            cancelledBefore.merge(movie, seq.get(), Math::max);
+            for (TranscodeJob job : queue) {
+                if (job.movie().equals(movie) && queue.remove(job)) {
+                    job.cancel();
+                    job.done().cancel(false);
+                    cancelled++;
+                }
+            }
+            for (TranscodeJob job : running) {
+                if (job.movie().equals(movie)) {
+                    job.cancel();
+                    cancelled++;
+                }
+            }
+        }
+        if (cancelled > 0) logger.info("Cancelled {} transcode jobs of {}", cancelled, movie);
+        return cancelled;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public List<TranscodeJob> running() {
+        return new ArrayList<>(running);
+    }
+
+    private long demandOf(String movie) {
+        LongAdder d = demand.get(movie);
+        return d == null ? 0 : d.sum();
+    }
+
+    private void work() {
+        while (true) {
+            TranscodeJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Μαζί με το cancel(): ή το job μπαίνει στα running πριν το δει εκείνο, ή βλέπουμε εδώ το cancel
+            synchronized (this) {
+                if (job.isCancelled() || job.seq() < cancelledBefore.getOrDefault(job.movie(), -1L)) {
+                    job.cancel();
+                    job.done().cancel(false);
+                    continue;
+                }
+                running.add(job);
+            }
+            job.started();
+            try {
+                runner.accept(job);
+                job.done().complete(null);
+            } catch (RuntimeException e) {
+                logger.error("Transcode job for {} failed: {}", job.movie(), e.toString());
+                job.done().completeExceptionally(e);
+            } finally {
+                running.remove(job);
+                Thread.interrupted(); // καθαρό interrupt flag για το επόμενο job
+            }
+        }
+    }
+
+    private void report() {
+        if (running.isEmpty() && queue.isEmpty()) return;
+        logger.info("Transcode queue: {} running, {} queued", running.size(), queue.size());
+        for (TranscodeJob job : running) {
+            logger.info("  {}", job);
+        }
+    }
+}
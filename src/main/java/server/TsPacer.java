@@ -0,0 +1,74 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+// Live ρυθμός για MPEG-TS στο JVM, στη θέση του -re του ffmpeg. Token bucket σε χρόνο media: τα tokens
+// (ns) γεμίζουν με το ρολόι και κάθε chunk ξοδεύει όσο χρόνο media περιέχει, από το PCR του TS ή, όσο δεν
+// έχει φανεί PCR, από τα bytes και το ονομαστικό bitrate. Το βάθος BURST_MS αφήνει την αρχή να φύγει
+// αμέσως, ώστε ο player να γεμίσει το buffer του και να ξεκινήσει γρήγορα.
+class TsPacer {
+    static final int TS_PACKET = 188;
+    static final int CHUNK = 56 * TS_PACKET; // ~10 KB, λιγότερο από ένα PCR διάστημα σε κάθε bitrate
+    private static final long BURST_NANOS = Long.getLong("stream.burstMs", 1000) * 1_000_000;
+    // Μεγαλύτερο άλμα στο PCR είναι discontinuity, όχι χρόνος που πρέπει να περιμένουμε
+    private static final long MAX_PCR_STEP_NANOS = 5_000_000_000L;
+
+    private final double nanosPerByte;
+    private long start = -1;
+    private long media; // ns media ως το τέλος του τελευταίου chunk
+    private long lastPcr = -1;
+    private long bytes;
+
+    TsPacer(double bitsPerSecond) {
+        this.nanosPerByte = 8e9 / bitsPerSecond;
+    }
+
+    // Γεμάτο chunk από ολόκληρα TS πακέτα, λιγότερο μόνο στο τέλος. 0 στο EOF.
+    static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int n = 0, r;
+        while (n < buffer.length && (r = in.read(buffer, n, buffer.length - n)) > 0) n += r;
+        return n;
+    }
+
+    // Μπλοκάρει μέχρι να είναι ώρα να φύγει το chunk
+    void pace(byte[] buffer, int length) throws InterruptedIOException {
+        long now = System.nanoTime();
+        if (start < 0) start = now;
+        long pcr = lastPcr(buffer, length);
+        if (pcr >= 0) {
+            if (lastPcr >= 0) {
+                long step = (pcr - lastPcr) * 1000 / 27;
+                if (step > 0 && step < MAX_PCR_STEP_NANOS) media += step;
+            }
+            lastPcr = pcr;
+        } else if (lastPcr < 0) {
+            media = (long) (bytes * nanosPerByte);
+        }
+        bytes += length;
+        long wait = start + media - BURST_NANOS - now;
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pacing interrupted");
+        }
+    }
+
+    // Το τελευταίο PCR του chunk σε μονάδες 27 MHz, -1 αν δεν έχει
+    private static long lastPcr(byte[] b, int length) {
+        long pcr = -1;
+        for (int off = 0; off + TS_PACKET <= length; off += TS_PACKET) {
+            if (b[off] != 0x47 || (b[off + 3] & 0x20) == 0) continue; // χωρίς adaptation field
+            int afLength = b[off + 4] & 0xFF;
+            if (afLength < 7 || (b[off + 5] & 0x10) == 0) continue;
+            long base = ((b[off + 6] & 0xFFL) << 25) | ((b[off + 7] & 0xFFL) << 17) | ((b[off + 8] & 0xFFL) << 9)
+                    | ((b[off + 9] & 0xFFL) << 1) | ((b[off + 10] & 0xFFL) >> 7);
+            int extension = ((b[off + 10] & 0x01) << 8) | (b[off + 11] & 0xFF);
+            pcr = base * 300 + extension;
+        }
+        return pcr;
+    }
+}
@@ -2,8 +2,12 @@ package server;
 
 import shared.Constants;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.*;
 import org.apache.logging.log4j.LogManager;
@@ -18,73 +22,61 @@ public class VideoGenerator {
                     "videogen.threads",
                     String.valueOf(Runtime.getRuntime().availableProcessors() / 2))));
 
-    // queue slots = 2 x threads
-    private static final int QUEUE_CAPACITY = THREADS * 2;
+    // Μόνιμος scheduler: δέχεται δουλειές και από την εκκίνηση και από τον CatalogWatcher
+    private static final TranscodeScheduler scheduler = new TranscodeScheduler(THREADS, VideoGenerator::transcodeLadder);
 
+    // Targets που είναι ήδη στην ουρά ή σε εξέλιξη
+    private static final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    public static TranscodeScheduler scheduler() {
+        return scheduler;
+    }
+
+    // Transcode τα βίντεο που λείπουν και περιμένει να τελειώσουν
     public static void generateMissingVideos() throws InterruptedException {
+        for (Future<?> job : queueMissingJobs()) {
+            try {
+                job.get();
+            } catch (ExecutionException | CancellationException e) {
+                logger.warn("Transcode job did not complete: {}", e.toString());
+            }
+        }
+    }
+
+    // Όπως το generateMissingVideos, χωρίς αναμονή. Επιστρέφει πόσα jobs μπήκαν στην ουρά.
+    public static int queueAllMissing() {
+        return queueMissingJobs().size();
+    }
+
+    private static List<Future<?>> queueMissingJobs() {
         File videoDir = new File(Constants.VIDEO_DIR);
         if (!videoDir.exists() || !videoDir.isDirectory()) {
             logger.warn("Video directory not found: {}", Constants.VIDEO_DIR);
-            return;
+            return List.of();
         }
-
-        // Συλλέγουμε τα υπάρχοντα βίντεο και τις πηγές τους
-        Map<String, Set<String>> movieSources = new HashMap<>();
-        for (File f : Objects.requireNonNull(videoDir.listFiles())) {
-            String name = f.getName();
-            for (String res : Constants.RESOLUTIONS) {
-                for (String fmt : Constants.FORMATS) {
-                    if (name.endsWith("-" + res + "." + fmt)) {
-                        String movie = name.substring(0, name.indexOf("-" + res + "." + fmt));
-                        movieSources.computeIfAbsent(movie, k -> new HashSet<>()).add(res + "|" + fmt);
-                    }
-                }
-            }
+        List<Future<?>> jobs = new ArrayList<>();
+        for (String movie : Catalog.get().movies()) {
+            jobs.addAll(queueMissing(movie));
         }
+        return jobs;
+    }
 
-        // Log ταινίες που υπάρχουν
-        BlockingQueue<Runnable> work = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
-        ThreadFactory tf = r -> {
-            Thread t = new Thread(r, "vid-gen-" + r.hashCode());
-            t.setDaemon(false);
-            return t;
-        };
-        ThreadPoolExecutor pool = new ThreadPoolExecutor(
-                THREADS,
-                THREADS,
-                0L, TimeUnit.MILLISECONDS,
-                work,
-                tf,
-                new ThreadPoolExecutor.CallerRunsPolicy()); // πιεση στην κύρια ροή αν γεμίσει η ουρά
-
-        // Transcode τα βίντεο που λείπουν
-        for (String movie : movieSources.keySet()) {
-            Set<String> existing = movieSources.get(movie);
-            int maxResIdx = existing.stream()
-                    .map(key -> key.split("\\|")[0])
-                    .mapToInt(res -> Arrays.asList(Constants.RESOLUTIONS).indexOf(res))
-                    .max().orElse(-1);
-
-            for (int i = 0; i <= maxResIdx; i++) {
-                String res = Constants.RESOLUTIONS[i];
-                for (String fmt : Constants.FORMATS) {
-                    String fileName = movie + "-" + res + "." + fmt;
-                    File target = new File(Constants.VIDEO_DIR, fileName);
-                    if (!target.exists()) {
-                        pool.execute(() -> transcodeSingle(movie, res, fmt, maxResIdx));
-                    }
-                }
+    // Βάζει στην ουρά τα renditions που λείπουν για έναν τίτλο, μέχρι το καλύτερο resolution που υπάρχει.
+    // Όλα μαζί γίνονται ένα ladder job: ένα decode της πηγής, ένα ffmpeg για όλα τα outputs.
+    public static List<Future<?>> queueMissing(String movie) {
+        Set<Rendition> existing = Catalog.get().renditionsOf(movie);
+        int maxResIdx = existing.stream().mapToInt(Rendition::resolutionIndex).max().orElse(-1);
+
+        List<Rendition> targets = new ArrayList<>();
+        for (int i = 0; i <= maxResIdx; i++) {
+            String res = Constants.RESOLUTIONS[i];
+            for (String fmt : Constants.FORMATS) {
+                Rendition target = new Rendition(movie, res, fmt);
+                if (existing.contains(target) || target.file().exists()) continue;
+                if (queued.add(target.fileName())) targets.add(target);
             }
         }
-
-        pool.shutdown();
-        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-    }
-
-    private static void transcodeSingle(String movie, String res, String fmt, int maxResIdx) {
-        String outName = movie + "-" + res + "." + fmt;
-        File outFile = new File(Constants.VIDEO_DIR, outName);
-        if (outFile.exists()) return; // το έκανε άλλο thread
+        if (targets.isEmpty()) return List.of();
 
         // Best available source (<= maxResIdx)
         File source = null;
@@ -99,32 +91,166 @@ public class VideoGenerator {
             }
         }
         if (source == null) {
-            logger.warn("No source found for {}", outName);
-            return;
+            logger.warn("No source found for {}", movie);
+            for (Rendition target : targets) queued.remove(target.fileName());
+            return List.of();
         }
 
-        logger.info("[{}] → {}", Thread.currentThread().getName(), outName);
+        TranscodeJob job = new TranscodeJob(movie, targets, source, MediaIndex.duration(source), scheduler.nextSeq());
+        job.done().whenComplete((v, e) -> {
+            for (Rendition target : targets) queued.remove(target.fileName());
+        });
+        scheduler.submit(job);
+        return List.of(job.done());
+    }
+
+    public static void recordDemand(String movie) {
+        scheduler.recordDemand(movie);
+    }
+
+    public static int cancel(String movie) {
+        return scheduler.cancel(movie);
+    }
+
+    // Διάρκεια σε δευτερόλεπτα μέσω ffprobe, 0 αν δεν είναι διαθέσιμη
+    static double probeDuration(File file) {
         try {
-            ProcessBuilder pb = new ProcessBuilder(
-                    Constants.FFMPEG_PATH,
-                    "-hide_banner",
-                    "-loglevel", "error", //error output only
-                    "-y",
-                    "-threads", "1",
-                    "-i", source.getAbsolutePath(),
-                    "-vf", "scale=-2:" + res.replace("p", ""),
-                    outFile.getAbsolutePath());
-
-            // Χωρίς *combined* stdout/stderr ώστε οι buffers να μην γεμίζουν.
-            pb.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
-
-            int exit = pb.start().waitFor();
+            Process p = new ProcessBuilder(
+                    Constants.FFPROBE_PATH,
+                    "-v", "error",
+                    "-show_entries", "format=duration",
+                    "-of", "default=noprint_wrappers=1:nokey=1",
+                    file.getAbsolutePath())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            FfmpegMetrics.track(FfmpegMetrics.PROBE, p);
+            String out;
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                out = r.readLine();
+            }
+            p.waitFor();
+            return out == null ? 0 : Double.parseDouble(out.trim());
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not probe duration of {}: {}", file.getName(), e.toString());
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static void transcodeLadder(TranscodeJob job) {
+        String movie = job.movie();
+        File source = job.source();
+        List<Rendition> targets = job.targets();
+
+        // Ομαδοποίηση ανά resolution: ένα scale ανά resolution, μετά split ανά format
+        Map<String, List<Rendition>> byRes = new TreeMap<>(Comparator.comparingInt(Rendition::resolutionIndex));
+        for (Rendition t : targets) {
+            byRes.computeIfAbsent(t.resolution(), k -> new ArrayList<>()).add(t);
+        }
+
+        List<String> cmd = new ArrayList<>(List.of(
+                Constants.FFMPEG_PATH,
+                "-hide_banner",
+                "-loglevel", "error", //error output only
+                "-y",
+                "-threads", "1",
+                "-i", source.getAbsolutePath()));
+
+        // π.χ. [0:v]split=2[s0][s1];[s0]scale=-2:240,split=3[v0_0][v0_1][v0_2];[s1]scale=-2:360,split=1[v1_0]
+        StringBuilder graph = new StringBuilder("[0:v]split=" + byRes.size());
+        for (int i = 0; i < byRes.size(); i++) graph.append("[s").append(i).append(']');
+        List<String> outputs = new ArrayList<>();
+        List<File> tmpFiles = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, List<Rendition>> e : byRes.entrySet()) {
+            List<Rendition> group = e.getValue();
+            graph.append(";[s").append(i).append("]scale=-2:").append(e.getKey().replace("p", ""))
+                    .append(",split=").append(group.size());
+            for (int k = 0; k < group.size(); k++) {
+                String label = "[v" + i + "_" + k + "]";
+                graph.append(label);
+                // Γράφουμε σε κρυφό αρχείο και κάνουμε rename στο τέλος, ώστε ο watcher και ο
+                // κατάλογος να μη δουν ποτέ μισό αρχείο
+                File tmpFile = new File(Constants.VIDEO_DIR, "." + group.get(k).fileName());
+                tmpFiles.add(tmpFile);
+                // Keyframes στα ίδια σημεία σε όλα τα renditions, ανά SEGMENT_SECONDS: τα HLS segments
+                // ευθυγραμμίζονται και ο ABR client αλλάζει rendition χωρίς κενά ή επικαλύψεις
+                outputs.addAll(List.of("-map", label, "-map", "0:a?",
+                        "-force_key_frames", "expr:gte(t,n_forced*" + SegmentPackager.SEGMENT_SECONDS + ")",
+                        tmpFile.getAbsolutePath()));
+            }
+            i++;
+        }
+        cmd.add("-filter_complex");
+        cmd.add(graph.toString());
+        // Progress σε key=value γραμμές στο stdout για throughput/ETA
+        cmd.addAll(List.of("-progress", "pipe:1", "-nostats"));
+        cmd.addAll(outputs);
+
+        List<Rendition> ordered = new ArrayList<>();
+        byRes.values().forEach(ordered::addAll);
+        logger.info("[{}] {} → {}", Thread.currentThread().getName(), source.getName(), ordered);
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+
+            // stderr πετιέται ώστε ο buffer του να μη γεμίσει, το stdout έχει μόνο το progress
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+            Process process = FfmpegMetrics.track(FfmpegMetrics.TRANSCODE, pb.start());
+            job.attach(process);
+            readProgress(process, job);
+            int exit = process.waitFor();
+            if (job.isCancelled()) {
+                logger.info("Ladder for {} cancelled", movie);
+                return;
+            }
             if (exit != 0) {
-                logger.warn("ffmpeg exited {} while creating {}", exit, outName);
+                logger.warn("ffmpeg exited {} while creating ladder for {}", exit, movie);
+                return;
             }
-        } catch (IOException | InterruptedException e) {
-            logger.error("Failed to create {}: {}", outName, e.toString());
+            for (int k = 0; k < ordered.size(); k++) {
+                Files.move(tmpFiles.get(k).toPath(), ordered.get(k).file().toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Catalog.add(ordered.get(k));
+            }
+        } catch (IOException e) {
+            logger.error("Failed to create ladder for {}: {}", movie, e.toString());
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while creating ladder for {}", movie);
             Thread.currentThread().interrupt();
+        } finally {
+            // Ό,τι δεν έγινε rename (ακύρωση, σφάλμα, αποτυχημένο move) δεν πρέπει να μείνει στον κατάλογο
+            for (File tmp : tmpFiles) {
+                try {
+                    Files.deleteIfExists(tmp.toPath());
+                } catch (IOException e) {
+                    logger.warn("Could not delete {}: {}", tmp, e.toString());
+                }
+            }
+        }
+    }
+
+    // Γραμμές του -progress: out_time_us=..., speed=1.5x, progress=continue|end
+    private static void readProgress(Process process, TranscodeJob job) throws IOException {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            double outTime = 0;
+            while ((line = r.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq == -1) continue;
+                String key = line.substring(0, eq);
+                String value = line.substring(eq + 1).trim();
+                try {
+                    if (key.equals("out_time_us") || key.equals("out_time_ms")) { // και τα δύο σε μs
+                        outTime = Long.parseLong(value) / 1_000_000.0;
+                    } else if (key.equals("speed") && value.endsWith("x")) {
+                        job.progress(outTime, Double.parseDouble(value.substring(0, value.length() - 1)));
+                    }
+                } catch (NumberFormatException ignored) {
+                    // "N/A" στην αρχή του encode
+                }
+            }
         }
     }
 }
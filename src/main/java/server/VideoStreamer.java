@@ -2,47 +2,133 @@ package server;
 
 import shared.Constants;
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class VideoStreamer {
     private static final Logger logger = LogManager.getLogger(VideoStreamer.class);
 
-    // TCP: FFMPEG listens, client connects
-    public static void streamViaTCP(String videoPath, int port) throws IOException {
+    private static final int ACCEPT_TIMEOUT_MS = 10000;
+
+    // TCP: ο server ακούει στο port, ειδοποιεί όταν είναι bound (onListening) και όταν φύγουν τα πρώτα bytes
+    // (onFirstPacket), ώστε ο client να ξεκινάει το ffplay χωρίς να μαντεύει πότε είναι έτοιμο το ffmpeg.
+    // Listener, viewer socket και ffmpeg κλείνουν και με το τέλος του session (ο client έφυγε).
+    public static void streamViaTCP(String videoPath, int port, SessionRegistry.Session session, Runnable onListening,
+                                    Runnable onFirstPacket) throws IOException {
         logger.info("Starting TCP stream for video: " + videoPath + " on port " + port);
-        ProcessBuilder pb = new ProcessBuilder(
-                Constants.FFMPEG_PATH,
-                "-re",
-                "-i", videoPath,
-                "-f", "mpegts",
-                "tcp://0.0.0.0:" + port + "?listen"
-        );
-        pb.inheritIO();
-        logger.info("FFmpeg command: " + String.join(" ", pb.command()));
-        Process process = pb.start();
-        try { process.waitFor(); } catch (InterruptedException ignored) {}
+        try (ServerSocket listener = new ServerSocket()) {
+            listener.setReuseAddress(true);
+            listener.bind(new InetSocketAddress(port), 1);
+            listener.setSoTimeout(ACCEPT_TIMEOUT_MS);
+            session.onEnd(listener);
+            onListening.run();
+            Socket accepted;
+            try {
+                accepted = listener.accept();
+            } catch (SocketException e) {
+                if (session.isEnded()) return;
+                throw e;
+            }
+            try (Socket viewer = accepted) {
+                session.onEnd(viewer);
+                viewer.setTcpNoDelay(true);
+                Process process = startTsSource(videoPath);
+                session.onEnd(process::destroy);
+                try (InputStream in = process.getInputStream();
+                     OutputStream out = viewer.getOutputStream()) {
+                    byte[] first = new byte[64 * 1024];
+                    int n = in.read(first);
+                    if (n <= 0) return;
+                    out.write(first, 0, n);
+                    out.flush();
+                    onFirstPacket.run();
+                    in.transferTo(out);
+                } catch (IOException e) {
+                    if (!session.isEnded()) logger.info("TCP viewer on port " + port + " disconnected: " + e.getMessage());
+                    session.end(SessionRegistry.EOF);
+                } finally {
+                    process.destroy();
+                }
+            }
+        }
     }
 
-    // UDP: FFMPEG sends to client IP/port, client listens
-    public static void streamViaUDP(String videoPath, String clientIP, int clientPort) throws IOException {
-        logger.info("Starting UDP stream for video: " + videoPath + " to " + clientIP + ":" + clientPort);
-        ProcessBuilder pb = new ProcessBuilder(
-                Constants.FFMPEG_PATH,
-                "-re",
+    interface MediaSink {
+        void write(byte[] buffer, int length) throws IOException;
+    }
+
+    // INBAND: τα bytes του TS πάνε από τη σύνδεση ελέγχου (TLS, μέσω του load balancer), χωρίς δεύτερο port.
+    // Το ffmpeg τρέχει χωρίς -re και τον ρυθμό τον δίνει ο TsPacer, με ένα buffer ανά stream για όλα τα chunks.
+    public static void streamInBand(String videoPath, SessionRegistry.Session session, MediaSink sink,
+                                    Runnable onFirstPacket) throws IOException {
+        logger.info("Starting in-band stream for video: " + videoPath);
+        Process process = startTsSource(videoPath, false);
+        session.onEnd(process::destroy);
+        Rendition rendition = Rendition.parse(new File(videoPath).getName());
+        double mbps = rendition != null ? Catalog.get().bitrate(rendition) : 0;
+        TsPacer pacer = new TsPacer((mbps > 0 ? mbps : Constants.BITRATE_360P) * 1_000_000);
+        byte[] buffer = new byte[TsPacer.CHUNK];
+        try (InputStream in = process.getInputStream()) {
+            boolean first = true;
+            int n;
+            while ((n = TsPacer.readChunk(in, buffer)) > 0) {
+                pacer.pace(buffer, n);
+                sink.write(buffer, n);
+                if (first) {
+                    first = false;
+                    onFirstPacket.run();
+                }
+            }
+        } catch (IOException e) {
+            if (!session.isEnded()) logger.info("In-band viewer of " + videoPath + " disconnected: " + e.getMessage());
+            session.end(SessionRegistry.EOF);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    // MPEG-TS στο stdout, για το StreamHub (UDP) και για το TCP stream σε live ρυθμό (-re), για το INBAND
+    // όσο γρήγορα το διαβάζουμε. Κάθε source είναι ένα encode και περνάει από το Admission
+    // (BusyException αν έχουν γεμίσει).
+    public static Process startTsSource(String videoPath) throws IOException {
+        return startTsSource(videoPath, true);
+    }
+
+    public static Process startTsSource(String videoPath, boolean live) throws IOException {
+        return Admission.encode(() -> launchTsSource(videoPath, live));
+    }
+
+    public static Process startRtpSource(String videoPath, int hubPort) throws IOException {
+        return Admission.encode(() -> launchRtpSource(videoPath, hubPort));
+    }
+
+    private static Process launchTsSource(String videoPath, boolean live) throws IOException {
+        logger.info("Starting MPEG-TS source for video: " + videoPath);
+        if (StubSource.ENABLED) return FfmpegMetrics.track(FfmpegMetrics.STREAM, StubSource.ts(videoPath, live));
+        List<String> command = new ArrayList<>(List.of(Constants.FFMPEG_PATH));
+        if (live) command.add("-re");
+        command.addAll(List.of(
                 "-i", videoPath,
                 "-f", "mpegts",
-                "udp://" + clientIP + ":" + clientPort
-        );
-        pb.inheritIO();
+                "-flush_packets", "1", // κάθε πακέτο φεύγει αμέσως αντί να περιμένει γεμάτο buffer
+                "pipe:1"
+        ));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
         logger.info("FFmpeg command: " + String.join(" ", pb.command()));
-        Process process = pb.start();
-        try { process.waitFor(); } catch (InterruptedException ignored) {}
+        return FfmpegMetrics.track(FfmpegMetrics.STREAM, pb.start());
     }
 
-    // RTP: FFMPEG generates SDP, sends RTP to client IP/port
-    public static void streamViaRTP(String videoPath, String clientIP, int clientPort, String sdpPath) throws IOException {
-        logger.info("Starting RTP stream for video: " + videoPath + " to " + clientIP + ":" + clientPort);
+    // RTP hub source: FFMPEG sends RTP to the hub's local port and prints the SDP on stdout
+    private static Process launchRtpSource(String videoPath, int hubPort) throws IOException {
+        logger.info("Starting shared RTP source for video: " + videoPath + " to hub port " + hubPort);
+        if (StubSource.ENABLED) return FfmpegMetrics.track(FfmpegMetrics.STREAM, StubSource.rtp(videoPath, hubPort));
         ProcessBuilder pb = new ProcessBuilder(
                 Constants.FFMPEG_PATH,
                 "-re",
@@ -52,13 +138,11 @@ public class VideoStreamer {
                 "-c:v", "libx264",
                 "-preset", "ultrafast", // for fast CPU encoding
                 "-f", "rtp",
-                "-sdp_file", sdpPath,
-                "rtp://" + clientIP + ":" + clientPort
+                "rtp://127.0.0.1:" + hubPort
         );
 
-        pb.inheritIO();
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
         logger.info("FFmpeg command: " + String.join(" ", pb.command()));
-        Process process = pb.start();
-        try { process.waitFor(); } catch (InterruptedException ignored) {}
+        return FfmpegMetrics.track(FfmpegMetrics.STREAM, pb.start());
     }
 }
@@ -0,0 +1,29 @@
+package shared;
+
+import java.io.IOException;
+
+// Ο server είναι γεμάτος (sessions ή live encodes) και ζητάει να ξαναδοκιμάσουμε σε retryAfterMs,
+// ιδανικά σε άλλο backend
+public class BusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+
+    public BusyException(long retryAfterMs) {
+        super("Server busy, retry in " + retryAfterMs + " ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    // Η γραμμή μετά το Protocol.BUSY στο text protocol
+    public static BusyException parse(String retryLine) {
+        try {
+            return new BusyException(Long.parseLong(retryLine.trim()));
+        } catch (RuntimeException e) {
+            return new BusyException(0);
+        }
+    }
+
+    public long retryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -2,11 +2,12 @@ package shared;
 
 public class Constants {
     public static final int PORT = 5300;
-    public static final int RTP_PORT = 54475;
+    public static final int RTP_PORT_MIN = 40000; // εύρος για τα ζεύγη RTP/RTCP των sessions
+    public static final int RTP_PORT_MAX = 60000;
     public static final String SERVER_IP = "localhost";
     public static final String VIDEO_DIR = "videos/";
     public static final String FFMPEG_PATH = "ffmpeg";
-    public static final String SPEED_TEST_SERVER = "http://speedtest.tele2.net/10MB.zip"; //Εδώ έγινε αλλαγή του server που χτυπάει γιατί το αρχικό στο gihub δεν λειτουργούσε
+    public static final String FFPROBE_PATH = "ffprobe";
     public static final double BITRATE_240P = 0.7;
     public static final double BITRATE_360P = 1.0;
     public static final double BITRATE_480P = 2.0;
@@ -22,4 +23,7 @@ public class Constants {
     public static final String TRUSTSTORE_PASSWORD = "password";
     public static final String LOAD_BALANCER_IP = "localhost";
     public static final int LOAD_BALANCER_PORT = Constants.PORT + Constants.NUM_SERVERS; // Το port του load balancer είναι το επόμενο διαθέσιμο port μετά τα servers
+    public static final int SEGMENT_HTTP_PORT = Constants.LOAD_BALANCER_PORT + 1; // HTTP(S) για τα HLS segments, ένα ανά server node
+    public static final int SERVER_METRICS_PORT = Constants.SEGMENT_HTTP_PORT + 1; // plain-text /metrics του server
+    public static final int LB_METRICS_PORT = Constants.SERVER_METRICS_PORT + 1;   // και του load balancer
 }
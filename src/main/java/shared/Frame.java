@@ -0,0 +1,85 @@
+package shared;
+
+import java.io.*;
+
+// Ένα μήνυμα του binary control protocol: [int length][int requestId][byte type][payload], length = 5 + payload.
+// Με το requestId μία σύνδεση εξυπηρετεί πολλά αιτήματα ταυτόχρονα (LIST, STREAM, STATS).
+public record Frame(int requestId, byte type, byte[] payload) {
+    // Πρώτο byte μιας binary σύνδεσης. Το text protocol ξεκινάει πάντα με ASCII γράμμα,
+    // οπότε ο server ξεχωρίζει τα δύο χωρίς επιπλέον round trip.
+    public static final int MAGIC = 0xB1;
+    public static final int MAX_LENGTH = 1 << 20;
+    public static final byte[] EMPTY = new byte[0];
+
+    // Client -> server
+    public static final byte LIST = 1;          // double speed, UTF format
+    public static final byte STREAM = 2;        // UTF movie, resolution, format, protocol, int port
+    public static final byte STATS = 3;
+    public static final byte READY = 4;         // όπως το Protocol.READY, και προς τις δύο κατευθύνσεις
+    public static final byte PROBE = 5;         // int bytes: burst για μέτρηση bandwidth/RTT
+    public static final byte CANCEL = 6;        // σταματάει το STREAM με αυτό το requestId (ο server απαντάει END)
+    public static final byte KEEPALIVE = 7;     // requestId 0, ανά λίγα δευτερόλεπτα: ο client είναι ακόμα εκεί
+
+    // Server -> client
+    public static final byte LISTING = 10;      // int count, count x (UTF movie, UTF resolution, int kbps)
+    public static final byte STREAMING = 11;    // UTF playlist URL για HLS, αλλιώς κενό
+    public static final byte NOT_FOUND = 12;
+    public static final byte SDP = 13;          // UTF sdp
+    public static final byte FIRST_PACKET = 14;
+    public static final byte END = 15;          // τέλος του stream, το requestId δεν ξαναχρησιμοποιείται
+    public static final byte STATS_RESULT = 16; // int count, count x (UTF key, UTF value)
+    public static final byte ERROR = 17;        // UTF message
+    public static final byte PROBE_DATA = 18;   // ασυμπίεστα bytes του burst, το πρώτο κενό για το RTT, μετά END
+    public static final byte BUSY = 19;         // int retryAfterMs: γεμάτος server, το αίτημα δεν εκτελέστηκε
+    public static final byte MEDIA = 20;        // bytes MPEG-TS ενός INBAND stream, μέχρι το END
+
+    public DataInputStream body() {
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    // null στο τέλος της σύνδεσης
+    public static Frame read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 5 || length > MAX_LENGTH) throw new IOException("Bad frame length: " + length);
+        int requestId = in.readInt();
+        byte type = in.readByte();
+        byte[] payload = new byte[length - 5];
+        in.readFully(payload);
+        return new Frame(requestId, type, payload);
+    }
+
+    // Πολλά threads γράφουν στην ίδια σύνδεση, οπότε κάθε frame γράφεται ολόκληρο υπό lock
+    public static void write(DataOutputStream out, int requestId, byte type, byte[] payload) throws IOException {
+        write(out, requestId, type, payload, payload.length);
+    }
+
+    // Τα πρώτα length bytes του buffer, για buffers που ξαναχρησιμοποιούνται
+    public static void write(DataOutputStream out, int requestId, byte type, byte[] buffer, int length)
+            throws IOException {
+        synchronized (out) {
+            out.writeInt(5 + length);
+            out.writeInt(requestId);
+            out.writeByte(type);
+            out.write(buffer, 0, length);
+            out.flush();
+        }
+    }
+
+    public static byte[] payload(Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        body.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    public interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
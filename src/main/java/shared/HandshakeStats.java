@@ -0,0 +1,48 @@
+package shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLSession;
+
+// Χρόνοι TLS handshake, χωριστά για πλήρη handshakes και για resumptions
+public class HandshakeStats {
+    private final LongAdder full = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder fullNanos = new LongAdder();
+    private final LongAdder resumedNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    // Ένα resumed session κρατάει το creation time του αρχικού, πριν από την αρχή του handshake
+    public static boolean isResumed(SSLSession session, long startMillis) {
+        return session.getCreationTime() < startMillis;
+    }
+
+    // Επιστρέφει πόσα handshakes έχουν μετρηθεί συνολικά
+    public long record(long nanos, boolean wasResumed) {
+        if (wasResumed) {
+            resumed.increment();
+            resumedNanos.add(nanos);
+        } else {
+            full.increment();
+            fullNanos.add(nanos);
+        }
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        return full.sum() + resumed.sum();
+    }
+
+    public long full() {
+        return full.sum();
+    }
+
+    public long resumed() {
+        return resumed.sum();
+    }
+
+    public String summary() {
+        long f = full.sum(), r = resumed.sum();
+        return String.format("TLS handshakes: %d full (avg %.1f ms), %d resumed (avg %.1f ms), max %.1f ms",
+                f, f == 0 ? 0.0 : fullNanos.sum() / 1e6 / f,
+                r, r == 0 ? 0.0 : resumedNanos.sum() / 1e6 / r,
+                maxNanos.get() / 1e6);
+    }
+}
@@ -0,0 +1,81 @@
+package shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram με λογαριθμικά buckets (σφάλμα ~3%) για latencies, μεγέθη κτλ. Lock-free και σταθερής μνήμης,
+// όσα samples κι αν μπουν, οπότε μπορεί να γράφεται από χιλιάδες threads ταυτόχρονα.
+// Τιμές κάτω από 64 έχουν δικό τους bucket, από εκεί και πάνω 32 buckets ανά δύναμη του 2.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int HALF = SUB / 2;
+    private static final int BUCKETS = SUB + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // Το άνω όριο του bucket όπου πέφτει το p (0..100) εκατοστημόριο, όχι πάνω από το max
+    public long percentile(double p) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    // π.χ. "n=120 mean=3.2 p50=2.9 p90=5.1 p99=9.8 p99.9=12.0 max=12.3", με τις τιμές διαιρεμένες με scale
+    public String summary(double scale) {
+        return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f", count(),
+                mean() / scale, percentile(50) / scale, percentile(90) / scale, percentile(99) / scale,
+                percentile(99.9) / scale, max() / scale);
+    }
+
+    private static int index(long v) {
+        if (v < SUB) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+        int mantissa = (int) (v >>> shift); // HALF..SUB-1
+        return SUB + (shift - 1) * HALF + (mantissa - HALF);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB) return index;
+        int k = index - SUB;
+        int shift = k / HALF + 1;
+        long mantissa = k % HALF + HALF;
+        long upper = ((mantissa + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
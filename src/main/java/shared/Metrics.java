@@ -0,0 +1,246 @@
+package shared;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import javax.management.*;
+
+// Counters, gauges και histograms μιας διεργασίας (server, load balancer ή client) με ονόματα σε μορφή
+// Prometheus: "name" ή "name{label="value",...}". Κάθε metric φτιάχνεται μία φορά και ο κώδικας κρατάει
+// την αναφορά, οπότε στο hot path ένα increment/record είναι LongAdder/AtomicLongArray χωρίς allocation.
+// Διαβάζονται μέσω JMX (multimedia:type=Metrics,process=...) και σε plain text από το http://host:port/metrics.
+public final class Metrics {
+    private static final Map<String, Object> registry = new ConcurrentSkipListMap<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private Metrics() {}
+
+    // Αύξων μετρητής
+    public static LongAdder counter(String name) {
+        return get(name, LongAdder.class, k -> new LongAdder());
+    }
+
+    // Τιμή που ανεβαίνει και κατεβαίνει (ενεργά sessions, συνδέσεις...)
+    public static AtomicLong gauge(String name) {
+        return get(name, AtomicLong.class, k -> new AtomicLong());
+    }
+
+    // Τιμή που υπολογίζεται όταν διαβαστεί (μέγεθος ουράς κτλ.)
+    public static void gauge(String name, LongSupplier value) {
+        registry.put(name, value);
+    }
+
+    // Κατανομή τιμών, π.χ. latencies σε μικροδευτερόλεπτα (με κατάληξη _micros στο όνομα)
+    public static LatencyHistogram histogram(String name) {
+        return get(name, LatencyHistogram.class, k -> new LatencyHistogram());
+    }
+
+    // name("x_total", "protocol", "TCP") -> x_total{protocol="TCP"}
+    public static String name(String base, String... labels) {
+        if (labels.length == 0) return base;
+        StringBuilder sb = new StringBuilder(base).append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "'")).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    // Ένα metric ανά τιμή ενός label, για τιμές γνωστές από πριν (πρωτόκολλα κτλ.): το lookup συγκρίνει
+    // strings αντί να φτιάχνει το όνομα, οπότε δεν κάνει allocation. Άγνωστες τιμές πάνε στο "other".
+    public static final class Family<T> {
+        private final String[] values;
+        private final Object[] metrics;
+
+        private Family(String[] values, Object[] metrics) {
+            this.values = values;
+            this.metrics = metrics;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(String value) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i].equalsIgnoreCase(value)) return (T) metrics[i];
+            }
+            return (T) metrics[values.length];
+        }
+    }
+
+    public static <T> Family<T> family(String base, String label, String[] values, Function<String, T> factory) {
+        Object[] metrics = new Object[values.length + 1];
+        for (int i = 0; i < values.length; i++) metrics[i] = factory.apply(name(base, label, values[i]));
+        metrics[values.length] = factory.apply(name(base, label, "other"));
+        return new Family<>(values.clone(), metrics);
+    }
+
+    // JMX MBean και, με port > 0 (ή -Dmetrics.port), HTTP endpoint για scraping. Καλείται μία φορά από το main.
+    public static void start(String process, int defaultPort) {
+        gauge("jvm_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm_heap_used_bytes", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(),
+                    new ObjectName("multimedia:type=Metrics,process=" + process));
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+        int port = Integer.getInteger("metrics.port", defaultPort);
+        if (port <= 0) return;
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 16);
+            server.createContext("/metrics", Metrics::scrape);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            System.out.println("Metrics for " + process + " on http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    // Όλα τα metrics σε Prometheus text format. Τα histograms βγαίνουν σαν summary (quantiles, _sum, _count)
+    // συν ένα _max.
+    public static String text() {
+        StringBuilder sb = new StringBuilder(4096);
+        String lastBase = null;
+        for (Map.Entry<String, Object> e : registry.entrySet()) {
+            String name = e.getKey();
+            Object metric = e.getValue();
+            int brace = name.indexOf('{');
+            String base = brace < 0 ? name : name.substring(0, brace);
+            String labels = brace < 0 ? "" : name.substring(brace + 1, name.length() - 1);
+            if (!base.equals(lastBase)) {
+                sb.append("# TYPE ").append(base).append(' ').append(type(metric)).append('\n');
+                lastBase = base;
+            }
+            if (metric instanceof LatencyHistogram h) {
+                for (double q : QUANTILES) {
+                    sb.append(base).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                            .append("quantile=\"").append(q).append("\"} ").append(h.percentile(q * 100)).append('\n');
+                }
+                String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+                sb.append(base).append("_sum").append(suffix).append(h.sum()).append('\n');
+                sb.append(base).append("_count").append(suffix).append(h.count()).append('\n');
+                sb.append(base).append("_max").append(suffix).append(h.max()).append('\n');
+            } else {
+                sb.append(name).append(' ').append(value(metric)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String type(Object metric) {
+        if (metric instanceof LongAdder) return "counter";
+        if (metric instanceof LatencyHistogram) return "summary";
+        return "gauge";
+    }
+
+    private static long value(Object metric) {
+        if (metric instanceof LongAdder c) return c.sum();
+        if (metric instanceof AtomicLong g) return g.get();
+        if (metric instanceof LongSupplier s) return s.getAsLong();
+        throw new IllegalArgumentException("Not a scalar metric: " + metric);
+    }
+
+    private static <T> T get(String name, Class<T> type, Function<String, T> factory) {
+        Object metric = registry.computeIfAbsent(name, factory);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is already registered as " + type(metric));
+        }
+        return type.cast(metric);
+    }
+
+    private static void scrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = text().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // Read-only attributes: ένα ανά counter/gauge και name.count/.mean/.p50/.p99/.max ανά histogram
+    private static final class MBean implements DynamicMBean {
+        private static final String[] HISTOGRAM_FIELDS = {"count", "mean", "p50", "p99", "max"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object metric = registry.get(attribute);
+            if (metric != null && !(metric instanceof LatencyHistogram)) return value(metric);
+            int dot = attribute.lastIndexOf('.');
+            if (dot > 0 && registry.get(attribute.substring(0, dot)) instanceof LatencyHistogram h) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return h.count();
+                    case "mean": return h.mean();
+                    case "p50": return h.percentile(50);
+                    case "p99": return h.percentile(99);
+                    case "max": return h.max();
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    list.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException ignored) {
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> e : registry.entrySet()) {
+                if (e.getValue() instanceof LatencyHistogram) {
+                    for (String field : HISTOGRAM_FIELDS) {
+                        String type = field.equals("mean") ? "double" : "long";
+                        attributes.add(new MBeanAttributeInfo(e.getKey() + "." + field, type, field, true, false, false));
+                    }
+                } else {
+                    attributes.add(new MBeanAttributeInfo(e.getKey(), "long", type(e.getValue()), true, false, false));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Process metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -8,5 +8,16 @@ public class Protocol {
     public static final String SDP = "SDP";
     public static final String END_SDP = "END_SDP";
     public static final String SAVE = "SAVE";
+    public static final String SAVING = "SAVING";
     public static final String EXIT = "EXIT";
+    public static final String HEALTH = "HEALTH";
+    public static final String UP = "UP";
+    public static final String STARTING = "STARTING";
+    public static final String BUSY = "BUSY"; // ακολουθεί γραμμή με το retry-after σε ms
+    public static final String READY = "READY"; // η πλευρά που ακούει (socket/receiver) είναι bound
+    public static final String FIRST_PACKET = "FIRST_PACKET"; // ο server έστειλε τα πρώτα bytes του stream
+    // Client -> server όσο παίζει ένα stream: STOP το σταματάει, KEEPALIVE ανά λίγα δευτερόλεπτα (προαιρετικά)
+    // δείχνει ότι ο viewer είναι ακόμα εκεί. Το κλείσιμο της σύνδεσης σταματάει επίσης το stream.
+    public static final String STOP = "STOP";
+    public static final String KEEPALIVE = "KEEPALIVE";
 }
@@ -0,0 +1,72 @@
+package shared;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ζεύγη port για RTP (ζυγό) και RTCP (μονό, port + 1) από ένα εύρος, ώστε κάθε session να έχει τα δικά του.
+// Ο cursor προχωράει σε κάθε κλήση, έτσι ταυτόχρονα sessions δεν δοκιμάζουν όλα το ίδιο ζεύγος.
+public class RtpPorts {
+    private static final int MIN = even(Integer.getInteger("rtp.portMin", Constants.RTP_PORT_MIN));
+    private static final int MAX = Integer.getInteger("rtp.portMax", Constants.RTP_PORT_MAX);
+    private static final int PAIRS = Math.max(1, (MAX - MIN) / 2);
+    private static final AtomicInteger cursor = new AtomicInteger((int) (System.nanoTime() % PAIRS));
+
+    // Κρατάει ανοιχτά και τα δύο sockets, για όποιον θα λαμβάνει ο ίδιος (π.χ. το ingest του StreamHub)
+    public static DatagramChannel[] bindPair(InetAddress address) throws IOException {
+        for (int attempt = 0; attempt < PAIRS; attempt++) {
+            int port = nextCandidate();
+            DatagramChannel rtp = DatagramChannel.open(StandardProtocolFamily.INET);
+            try {
+                rtp.bind(new InetSocketAddress(address, port));
+            } catch (IOException e) {
+                rtp.close();
+                continue;
+            }
+            DatagramChannel rtcp = DatagramChannel.open(StandardProtocolFamily.INET);
+            try {
+                rtcp.bind(new InetSocketAddress(address, port + 1));
+                return new DatagramChannel[]{rtp, rtcp};
+            } catch (IOException e) {
+                rtcp.close();
+                rtp.close();
+            }
+        }
+        throw new IOException("No free RTP port pair in " + MIN + "-" + MAX);
+    }
+
+    // Βρίσκει ένα ελεύθερο ζεύγος και το αφήνει, για να το ανοίξει άλλη διεργασία (π.χ. το ffplay).
+    // Racy από τη φύση του: ανάμεσα στο close και στο bind της άλλης διεργασίας μπορεί να το πάρει κάποιος
+    // άλλος. Όποιος λαμβάνει ο ίδιος χρησιμοποιεί το bindPair, που κρατάει τα sockets ανοιχτά.
+    public static int findFreePair() throws IOException {
+        for (int attempt = 0; attempt < PAIRS; attempt++) {
+            int port = nextCandidate();
+            DatagramSocket rtp;
+            try {
+                rtp = new DatagramSocket(port);
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                new DatagramSocket(port + 1).close();
+                return port;
+            } catch (IOException ignored) {
+            } finally {
+                rtp.close();
+            }
+        }
+        throw new IOException("No free RTP port pair in " + MIN + "-" + MAX);
+    }
+
+    private static int nextCandidate() {
+        return MIN + 2 * Math.floorMod(cursor.getAndIncrement(), PAIRS);
+    }
+
+    private static int even(int port) {
+        return port % 2 == 0 ? port : port + 1;
+    }
+}
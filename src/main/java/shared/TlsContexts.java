@@ -0,0 +1,73 @@
+package shared;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import javax.net.ssl.*;
+
+// Ένα SSLContext ανά ρόλο για όλο το JVM, αντί για νέο context (και ξαναδιάβασμα του keystore) σε κάθε socket.
+// Το κοινό context κρατάει και το session cache: ένας client που ξανασυνδέεται κάνει resumption
+// (TLS 1.3 session tickets) αντί για πλήρες handshake, σε όποιο port του ίδιου JVM κι αν πέσει.
+public class TlsContexts {
+    private static final int SESSION_CACHE_SIZE = 10000;
+    private static final int SESSION_TIMEOUT_S = 24 * 60 * 60;
+
+    private static SSLContext server, client;
+
+    static {
+        // Stateless tickets: ο server δεν χρειάζεται να κρατάει state ανά session για το resumption
+        if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null) {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", "true");
+        }
+        if (System.getProperty("jdk.tls.client.enableSessionTicketExtension") == null) {
+            System.setProperty("jdk.tls.client.enableSessionTicketExtension", "true");
+        }
+    }
+
+    // Με το keystore του server (servers και load balancer σε TLS termination)
+    public static synchronized SSLContext server() throws IOException {
+        if (server == null) {
+            try (InputStream in = new FileInputStream(Constants.KEYSTORE_PATH)) {
+                char[] pass = Constants.KEYSTORE_PASSWORD.toCharArray();
+                KeyStore ks = KeyStore.getInstance("JKS");
+                ks.load(in, pass);
+                KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+                kmf.init(ks, pass);
+                server = SSLContext.getInstance("TLS");
+                server.init(kmf.getKeyManagers(), null, null);
+                configure(server.getServerSessionContext());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Could not load keystore " + Constants.KEYSTORE_PATH, e);
+            }
+        }
+        return server;
+    }
+
+    // Με το truststore του client (client, health checks του load balancer)
+    public static synchronized SSLContext client() throws IOException {
+        if (client == null) {
+            try (InputStream in = new FileInputStream(Constants.TRUSTSTORE_PATH)) {
+                KeyStore trustStore = KeyStore.getInstance("JKS");
+                trustStore.load(in, Constants.TRUSTSTORE_PASSWORD.toCharArray());
+                TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(trustStore);
+                client = SSLContext.getInstance("TLS");
+                client.init(null, tmf.getTrustManagers(), null);
+                configure(client.getClientSessionContext());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Could not load truststore " + Constants.TRUSTSTORE_PATH, e);
+            }
+        }
+        return client;
+    }
+
+    private static void configure(SSLSessionContext sessions) {
+        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT_S);
+    }
+}
@@ -0,0 +1,44 @@
+package shared;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Virtual threads όταν τρέχουμε σε Java 21+, αλλιώς platform threads με μικρό stack. Μέσω reflection,
+// ώστε το project να μένει σε Java 17.
+public class VirtualThreads {
+    private static final long PLATFORM_STACK = 256 * 1024;
+    public static final boolean AVAILABLE = factoryMethod() != null;
+
+    public static ExecutorService executor(String name) {
+        ExecutorService virtual = virtualExecutor();
+        if (virtual != null) return virtual;
+        AtomicInteger n = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(null, r, name + "-" + n.incrementAndGet(), PLATFORM_STACK);
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    private static ExecutorService virtualExecutor() {
+        Method factory = factoryMethod();
+        if (factory == null) return null;
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Method factoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}